@@ -0,0 +1,82 @@
+package com.rxvlvxr.benchmarks;
+
+import com.rxvlvxr.config.BookSearchAnalysisConfigurer;
+import com.rxvlvxr.config.PoolDataSourceAdapter;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import javax.sql.DataSource;
+import java.util.Properties;
+
+// контекст приложения без веб-слоя: настоящие сервисы и репозитории поверх встроенной H2 в режиме PostgreSQL
+@Configuration
+@ComponentScan({"com.rxvlvxr.services", "com.rxvlvxr.util"})
+@PropertySource("classpath:benchmark.properties")
+@EnableJpaRepositories("com.rxvlvxr.repositories")
+@EnableTransactionManagement
+public class BenchmarkConfig {
+
+    @Bean(destroyMethod = "close")
+    public DataSource dataSource() {
+        HikariConfig config = new HikariConfig();
+
+        config.setJdbcUrl("jdbc:h2:mem:bench;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=YEAR;DB_CLOSE_DELAY=-1");
+        config.setUsername("sa");
+        config.setMaximumPoolSize(8);
+
+        return new HikariDataSource(config);
+    }
+
+    // счетчики сервисов пишутся в реестр в памяти, экспорт метрик в бенчмарках не нужен
+    @Bean
+    public MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
+    @Bean
+    public LocalValidatorFactoryBean validator() {
+        return new LocalValidatorFactoryBean();
+    }
+
+    @Bean
+    public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
+        LocalContainerEntityManagerFactoryBean em = new LocalContainerEntityManagerFactoryBean();
+        em.setDataSource(new PoolDataSourceAdapter(dataSource()));
+        em.setPackagesToScan("com.rxvlvxr.models");
+        em.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+
+        // hibernate.properties приложения Hibernate загружает с classpath сам, поэтому настройки PostgreSQL переопределяем
+        Properties properties = new Properties();
+        properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.put("hibernate.show_sql", "false");
+        properties.put("hibernate.hbm2ddl.auto", "create");
+        // кэш второго уровня и кэш запросов выключены: бенчмарки вызывают сервисы с одними и теми же аргументами,
+        // и после прогрева каждый вызов был бы попаданием в кэш, а не запросом, маппингом и OFFSET/keyset
+        properties.put("hibernate.cache.use_second_level_cache", "false");
+        properties.put("hibernate.cache.use_query_cache", "false");
+        // полнотекстовый индекс в памяти
+        properties.put("hibernate.search.backend.analysis.configurer", BookSearchAnalysisConfigurer.class.getName());
+        properties.put("hibernate.search.backend.directory.type", "local-heap");
+        em.setJpaProperties(properties);
+
+        return em;
+    }
+
+    @Bean
+    public PlatformTransactionManager transactionManager() {
+        return new JpaTransactionManager(entityManagerFactory().getObject());
+    }
+}
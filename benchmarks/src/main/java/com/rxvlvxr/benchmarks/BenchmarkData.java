@@ -0,0 +1,99 @@
+package com.rxvlvxr.benchmarks;
+
+import com.rxvlvxr.models.Book;
+import com.rxvlvxr.services.BookPrefixIndex;
+import com.rxvlvxr.services.PersonNameIndex;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.search.mapper.orm.Search;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// общий контекст и набор данных для всех бенчмарков: поднимается один раз на JVM
+public final class BenchmarkData {
+    // размер набора данных задается системными свойствами, например -Dbench.books=100000
+    public static final int BOOKS = Integer.getInteger("bench.books", 20000);
+    public static final int PEOPLE = Integer.getInteger("bench.people", 2000);
+
+    static final String[] WORDS = {"Солярис", "Пикник", "Обочина", "Улитка", "Склон", "Трудно", "Быть",
+            "Богом", "Понедельник", "Начинается", "Субботу", "Град", "Обреченный", "Жук", "Муравейнике"};
+    static final String[] NAMES = {"Станислав", "Аркадий", "Борис", "Иван", "Федор", "Лев", "Антон", "Михаил"};
+    static final String[] SURNAMES = {"Лем", "Стругацкий", "Ефремов", "Булычев", "Беляев", "Толстой", "Чехов"};
+
+    private static AnnotationConfigApplicationContext context;
+
+    private BenchmarkData() {
+    }
+
+    public static synchronized AnnotationConfigApplicationContext context() {
+        if (context == null) {
+            context = new AnnotationConfigApplicationContext(BenchmarkConfig.class);
+            seed(context);
+        }
+
+        return context;
+    }
+
+    private static void seed(AnnotationConfigApplicationContext context) {
+        JdbcTemplate jdbc = new JdbcTemplate(context.getBean(DataSource.class));
+        Random random = new Random(42);
+
+        List<Object[]> people = new ArrayList<>();
+        // имена уникальны (ограничение person_name_key), повторы получают номер
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < PEOPLE; i++) {
+            String name = SURNAMES[i % SURNAMES.length] + " " + NAMES[random.nextInt(NAMES.length)] + " "
+                    + NAMES[random.nextInt(NAMES.length)] + "ович";
+            if (!names.add(name)) name += " " + i;
+
+            people.add(new Object[]{name, 1930 + random.nextInt(80)});
+        }
+        jdbc.batchUpdate("insert into person (name, birth_year) values (?, ?)", people);
+
+        long now = System.currentTimeMillis();
+        List<Object[]> books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            // каждая пятая книга выдана, часть выдач просрочена
+            boolean taken = i % 5 == 0;
+            Timestamp takenAt = taken ? new Timestamp(now - TimeUnit.DAYS.toMillis(random.nextInt(20))) : null;
+            Timestamp dueAt = taken ? new Timestamp(takenAt.getTime() + TimeUnit.DAYS.toMillis(10)) : null;
+
+            books.add(new Object[]{title(random), NAMES[random.nextInt(NAMES.length)] + " "
+                    + SURNAMES[random.nextInt(SURNAMES.length)], 1801 + random.nextInt(220),
+                    taken ? 1 + random.nextInt(PEOPLE) : null, takenAt, dueAt});
+
+            if (books.size() == 5000 || i == BOOKS - 1) {
+                jdbc.batchUpdate("insert into book (title, author, year, person_id, taken_at, due_at) " +
+                        "values (?, ?, ?, ?, ?, ?)", books);
+                books.clear();
+            }
+        }
+
+        // индексы строятся после прямой записи в базу данных
+        context.getBean(BookPrefixIndex.class).build();
+        try {
+            context.getBean(PersonNameIndex.class).rebuildAndWait();
+            Search.mapping(context.getBean(EntityManagerFactory.class)).scope(Book.class).massIndexer().startAndWait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String title(Random random) {
+        StringBuilder title = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+        int words = random.nextInt(3);
+
+        for (int i = 0; i < words; i++) title.append(' ').append(WORDS[random.nextInt(WORDS.length)].toLowerCase());
+
+        return title.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package com.rxvlvxr.benchmarks;
+
+import com.rxvlvxr.dto.BookListItem;
+import com.rxvlvxr.dto.BookSearchItem;
+import com.rxvlvxr.dto.KeysetPage;
+import com.rxvlvxr.services.BooksService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// BooksService: постраничный вывод каталога (OFFSET и keyset, с сортировкой и без) и поиск по началу названия
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BooksServiceBenchmark {
+
+    @Param({"10", "50", "100"})
+    public int booksPerPage;
+
+    @Param({"true", "false"})
+    public boolean sortByYear;
+
+    private BooksService booksService;
+    private int deepPage;
+    private String deepCursor;
+
+    @Setup
+    public void setUp() {
+        booksService = BenchmarkData.context().getBean(BooksService.class);
+        // страница в середине каталога: для OFFSET это худший случай
+        deepPage = BenchmarkData.BOOKS / booksPerPage / 2;
+
+        KeysetPage<BookListItem> page = booksService.findPage(Optional.empty(), Optional.empty(),
+                Optional.of(BooksService.MAX_BOOKS_PER_PAGE), sortByYear);
+        for (int i = 0; i < BenchmarkData.BOOKS / BooksService.MAX_BOOKS_PER_PAGE / 2 && page.hasNext(); i++)
+            page = booksService.findPage(Optional.of(page.getNextCursor()), Optional.empty(),
+                    Optional.of(BooksService.MAX_BOOKS_PER_PAGE), sortByYear);
+        deepCursor = page.getNextCursor();
+    }
+
+    @Benchmark
+    public List<BookListItem> findAllFirstPage() {
+        return booksService.findAll(Optional.of(0), Optional.of(booksPerPage), sortByYear);
+    }
+
+    @Benchmark
+    public List<BookListItem> findAllDeepPage() {
+        return booksService.findAll(Optional.of(deepPage), Optional.of(booksPerPage), sortByYear);
+    }
+
+    @Benchmark
+    public KeysetPage<BookListItem> findPageDeepCursor() {
+        return booksService.findPage(Optional.ofNullable(deepCursor), Optional.empty(), Optional.of(booksPerPage), sortByYear);
+    }
+
+    @Benchmark
+    public List<BookSearchItem> findByTitleStartingWith() {
+        return booksService.findByTitleStartingWith("сол");
+    }
+}
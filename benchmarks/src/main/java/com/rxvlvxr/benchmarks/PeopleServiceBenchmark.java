@@ -0,0 +1,35 @@
+package com.rxvlvxr.benchmarks;
+
+import com.rxvlvxr.models.Book;
+import com.rxvlvxr.services.PeopleService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// PeopleService.findAllBooksByPersonId: человек вместе с книгами и признаком просрочки
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeopleServiceBenchmark {
+
+    private PeopleService peopleService;
+    private int personId;
+
+    @Setup
+    public void setUp() {
+        peopleService = BenchmarkData.context().getBean(PeopleService.class);
+        personId = 1 + BenchmarkData.PEOPLE / 2;
+    }
+
+    @Benchmark
+    public List<Book> findAllBooksByPersonId() {
+        List<Book> books = peopleService.findAllBooksByPersonId(personId);
+        books.forEach(Book::isExpired);
+
+        return books;
+    }
+}
@@ -0,0 +1,117 @@
+package com.rxvlvxr.benchmarks;
+
+import com.rxvlvxr.dto.BookListItem;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.FileTemplateResolver;
+import org.thymeleaf.web.servlet.JakartaServletWebApplication;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// рендеринг списка книг (books/list) с моделью разного размера и страницы books/index с уже готовым списком,
+// то есть стоимость промаха и попадания в BookIndexCache
+// шаблоны берутся из исходников приложения: -Dbench.views=<путь к src/main/webapp/WEB-INF/views/>
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderingBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int books;
+
+    private SpringTemplateEngine templateEngine;
+    private WebContext context;
+    private WebContext indexContext;
+
+    @Setup
+    public void setUp() {
+        FileTemplateResolver resolver = new FileTemplateResolver();
+        resolver.setPrefix(System.getProperty("bench.views", "../src/main/webapp/WEB-INF/views/"));
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        resolver.setCacheable(true);
+
+        templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+        templateEngine.setEnableSpringELCompiler(true);
+
+        MockServletContext servletContext = new MockServletContext();
+        MockHttpServletRequest request = new MockHttpServletRequest(servletContext, "GET", "/books");
+        JakartaServletWebApplication application = JakartaServletWebApplication.buildApplication(servletContext);
+        context = new WebContext(application.buildExchange(request, new MockHttpServletResponse()));
+        indexContext = new WebContext(application.buildExchange(request, new MockHttpServletResponse()));
+
+        Random random = new Random(42);
+        List<BookListItem> model = new ArrayList<>(books);
+        for (int i = 0; i < books; i++)
+            model.add(new Item(i + 1, BenchmarkData.title(random), "Станислав Лем", 1801 + random.nextInt(220)));
+
+        context.setVariable("books", model);
+        context.setVariable("nextCursor", "1961_12");
+        context.setVariable("sortByYear", true);
+        indexContext.setVariable("booksHtml", renderList());
+    }
+
+    @Benchmark
+    public String renderList() {
+        StringWriter writer = new StringWriter(books * 128);
+        templateEngine.process("books/list", context, writer);
+
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String renderIndex() {
+        StringWriter writer = new StringWriter(books * 128);
+        templateEngine.process("books/index", indexContext, writer);
+
+        return writer.toString();
+    }
+
+    public static class Item implements BookListItem {
+        private final int id;
+        private final String title;
+        private final String author;
+        private final int year;
+
+        Item(int id, String title, String author, int year) {
+            this.id = id;
+            this.title = title;
+            this.author = author;
+            this.year = year;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String getTitle() {
+            return title;
+        }
+
+        @Override
+        public String getAuthor() {
+            return author;
+        }
+
+        @Override
+        public int getYear() {
+            return year;
+        }
+    }
+}
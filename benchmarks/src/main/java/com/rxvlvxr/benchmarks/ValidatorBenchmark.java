@@ -0,0 +1,93 @@
+package com.rxvlvxr.benchmarks;
+
+import com.rxvlvxr.models.Book;
+import com.rxvlvxr.models.Person;
+import com.rxvlvxr.util.BookValidator;
+import com.rxvlvxr.util.PersonYearValidator;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.validation.BeanPropertyBindingResult;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// ограничения @Pattern/@Size/@Min на Book и Person и собственные валидаторы
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidatorBenchmark {
+
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private final BookValidator bookValidator = new BookValidator();
+    private final PersonYearValidator personYearValidator = new PersonYearValidator();
+
+    private Book validBook;
+    private Book invalidBook;
+    private Person validPerson;
+
+    @Setup
+    public void setUp() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+
+        validBook = book("Пикник на обочине", "Аркадий Стругацкий", 1972);
+        invalidBook = book("пикник", "стругацкие", 1700);
+
+        validPerson = new Person();
+        validPerson.setName("Габараев Рауль Зурабович");
+        validPerson.setBirthYear(1990);
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<Book>> validBookConstraints() {
+        return validator.validate(validBook);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<Book>> invalidBookConstraints() {
+        return validator.validate(invalidBook);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<Person>> personConstraints() {
+        return validator.validate(validPerson);
+    }
+
+    @Benchmark
+    public boolean bookValidator() {
+        BeanPropertyBindingResult errors = new BeanPropertyBindingResult(validBook, "book");
+        bookValidator.validate(validBook, errors);
+
+        return errors.hasErrors();
+    }
+
+    @Benchmark
+    public boolean personYearValidator() {
+        BeanPropertyBindingResult errors = new BeanPropertyBindingResult(validPerson, "person");
+        personYearValidator.validate(validPerson, errors);
+
+        return errors.hasErrors();
+    }
+
+    private static Book book(String title, String author, int year) {
+        Book book = new Book();
+
+        book.setTitle(title);
+        book.setAuthor(author);
+        book.setYear(year);
+
+        return book;
+    }
+}
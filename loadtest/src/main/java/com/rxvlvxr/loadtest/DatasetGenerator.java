@@ -0,0 +1,204 @@
+package com.rxvlvxr.loadtest;
+
+import com.rxvlvxr.models.Book;
+import com.rxvlvxr.models.Person;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.hibernate.validator.messageinterpolation.ParameterMessageInterpolator;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Year;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// синтетический набор данных: people уникальных людей, books книг, доля loaned из них выдана
+// выдачи распределены неравномерно (закон Ципфа): немногие читатели держат много книг, большинство - одну или ни одной
+// одинаковые параметры и seed дают одинаковые данные, поэтому замеры воспроизводимы
+final class DatasetGenerator {
+    // сколько строк проверяется Bean Validation по аннотациям моделей приложения
+    private static final int VALIDATED_ROWS = 10000;
+    private static final int COPY_BUFFER_ROWS = 10000;
+
+    private final long books;
+    private final long people;
+    private final double loaned;
+    private final long seed;
+    private final int loanPeriodDays;
+
+    DatasetGenerator(long books, long people, double loaned, long seed, int loanPeriodDays) {
+        if (people > Vocabulary.MAX_PEOPLE)
+            throw new IllegalArgumentException("Не больше " + Vocabulary.MAX_PEOPLE + " уникальных людей");
+
+        this.books = books;
+        this.people = people;
+        this.loaned = loaned;
+        this.seed = seed;
+        this.loanPeriodDays = loanPeriodDays;
+    }
+
+    // таблицы очищаются и заполняются заново; id начинаются с 1, поэтому генератор трафика знает диапазоны id
+    void generate(Connection connection) throws SQLException {
+        try (ValidatorFactory validatorFactory = Validation.byDefaultProvider().configure()
+                .messageInterpolator(new ParameterMessageInterpolator())
+                .buildValidatorFactory()) {
+            Validator validator = validatorFactory.getValidator();
+
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("TRUNCATE book, person RESTART IDENTITY CASCADE");
+                // журнал и сводные таблицы /stats относятся к старым id и начинаются заново
+                statement.execute("TRUNCATE loan_event, loan_stats_book, loan_stats_year, loan_stats_person");
+            }
+
+            CopyManager copy = connection.unwrap(PGConnection.class).getCopyAPI();
+            long started = System.nanoTime();
+
+            copyPeople(copy, validator);
+            System.out.printf("person: %d rows, %d s%n", people, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+
+            copyBooks(copy, validator);
+            System.out.printf("book: %d rows, %d s%n", books, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+
+            fillStats(connection);
+
+            connection.commit();
+
+            // статистика для планировщика сразу после загрузки, а не после autovacuum
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE person");
+                statement.execute("ANALYZE book");
+            }
+        }
+    }
+
+    // сгенерированные выдачи считаются выдачами за все время, чтобы /stats сразу совпадала с book (docs/stats.md)
+    private static void fillStats(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO loan_stats_book SELECT id, 1 FROM book WHERE person_id IS NOT NULL");
+            statement.execute("INSERT INTO loan_stats_year SELECT year, count(*), count(*) FROM book " +
+                    "WHERE person_id IS NOT NULL GROUP BY year");
+            statement.execute("INSERT INTO loan_stats_person SELECT person_id, count(*) FROM book " +
+                    "WHERE person_id IS NOT NULL GROUP BY person_id");
+            statement.execute("UPDATE loan_stats_total SET (checkouts, active_loans, active_borrowers, overdue_loans, " +
+                    "reconciled_at) = (SELECT count(*), count(*), count(DISTINCT person_id), " +
+                    "count(*) FILTER (WHERE due_at < now()), now() FROM book WHERE person_id IS NOT NULL)");
+        }
+    }
+
+    private void copyPeople(CopyManager copy, Validator validator) throws SQLException {
+        Random random = new Random(seed);
+        int maxBirthYear = Year.now().getValue() - 14;
+
+        try (Rows rows = new Rows(copy.copyIn("COPY person (name, birth_year) FROM STDIN"))) {
+            for (long i = 0; i < people; i++) {
+                String name = Vocabulary.personName(i);
+                // возраст читателей от 14 до 90 лет (PersonYearValidator), больше всего - 25-45 лет
+                int birthYear = Math.max(maxBirthYear - 76, Math.min(maxBirthYear,
+                        maxBirthYear - 21 - (int) Math.round(random.nextGaussian() * 12)));
+
+                if (i < VALIDATED_ROWS) {
+                    Person person = new Person();
+                    person.setName(name);
+                    person.setBirthYear(birthYear);
+                    check(validator.validate(person), "person", name);
+                }
+
+                rows.add(name, String.valueOf(birthYear));
+            }
+        }
+    }
+
+    private void copyBooks(CopyManager copy, Validator validator) throws SQLException {
+        Random random = new Random(seed + 1);
+        Zipf borrowers = new Zipf(people, Zipf.READERS_EXPONENT, Zipf.READERS_OFFSET);
+        int currentYear = Year.now().getValue();
+        long now = System.currentTimeMillis();
+
+        try (Rows rows = new Rows(copy.copyIn(
+                "COPY book (title, author, year, person_id, taken_at, due_at) FROM STDIN"))) {
+            for (long i = 0; i < books; i++) {
+                String title = Vocabulary.title(random);
+                String author = Vocabulary.author(random);
+                // большая часть фонда - книги последних десятилетий, год не позже текущего (BookValidator)
+                int year = random.nextInt(4) == 0
+                        ? 1801 + random.nextInt(currentYear - 1800)
+                        : Math.max(1801, currentYear - (int) Math.abs(random.nextGaussian() * 25));
+
+                if (i < VALIDATED_ROWS) {
+                    Book book = new Book();
+                    book.setTitle(title);
+                    book.setAuthor(author);
+                    book.setYear(year);
+                    check(validator.validate(book), "book", title);
+                }
+
+                if (people > 0 && random.nextDouble() < loaned) {
+                    long personId = Zipf.scatter(borrowers.next(random), people);
+                    // срок с момента выдачи распределен экспоненциально (в среднем неделя), часть выдач просрочена
+                    long takenAt = now - (long) (-Math.log(1 - random.nextDouble()) * TimeUnit.DAYS.toMillis(7));
+                    long dueAt = takenAt + TimeUnit.DAYS.toMillis(loanPeriodDays);
+
+                    rows.add(title, author, String.valueOf(year), String.valueOf(personId),
+                            new Timestamp(takenAt).toString(), new Timestamp(dueAt).toString());
+                } else {
+                    rows.add(title, author, String.valueOf(year), null, null, null);
+                }
+            }
+        }
+    }
+
+    private static <T> void check(Set<ConstraintViolation<T>> violations, String table, String value) {
+        if (!violations.isEmpty())
+            throw new IllegalStateException(table + " '" + value + "' не проходит валидацию: " + violations);
+    }
+
+    // строки для COPY в текстовом формате, отправляются пачками
+    private static final class Rows implements AutoCloseable {
+        private final CopyIn copyIn;
+        private final StringBuilder buffer = new StringBuilder();
+        private int buffered;
+
+        private Rows(CopyIn copyIn) {
+            this.copyIn = copyIn;
+        }
+
+        // в словарях нет табуляций, переводов строк и обратных слэшей, поэтому экранировать нечего
+        void add(String... values) throws SQLException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) buffer.append('\t');
+                buffer.append(values[i] == null ? "\\N" : values[i]);
+            }
+            buffer.append('\n');
+
+            if (++buffered == COPY_BUFFER_ROWS) flush();
+        }
+
+        private void flush() throws SQLException {
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+            buffered = 0;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                flush();
+                copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) copyIn.cancelCopy();
+            }
+        }
+    }
+}
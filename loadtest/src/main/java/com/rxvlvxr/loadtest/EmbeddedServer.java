@@ -0,0 +1,101 @@
+package com.rxvlvxr.loadtest;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.startup.Tomcat;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+
+// встроенный Tomcat с WAR приложения: тот же дескриптор развертывания и те же фильтры, что и в обычном Tomcat
+// параметры подключения к базе данных берутся из hibernate.properties внутри WAR,
+// системные свойства (-Dhibernate.connection.url=...) их переопределяют
+final class EmbeddedServer implements AutoCloseable {
+    private static final Duration READY_TIMEOUT = Duration.ofMinutes(5);
+
+    private final Tomcat tomcat = new Tomcat();
+    private final int port;
+    private final Context context;
+
+    // virtualThreads - каждый запрос обрабатывается на новом виртуальном потоке самого коннектора (JDK 21+),
+    // maxThreads тогда не действует
+    EmbeddedServer(File war, int port, int maxThreads, boolean virtualThreads) throws IOException {
+        if (!war.isFile()) throw new IOException("WAR не найден: " + war + " (нужен mvn package в корне проекта)");
+        if (virtualThreads && Runtime.version().feature() < 21)
+            throw new IllegalStateException("Для виртуальных потоков нужна JDK 21+, сейчас " + Runtime.version());
+
+        this.port = port;
+
+        File baseDir = Files.createTempDirectory("project2-tomcat").toFile();
+        // сюда Tomcat распаковывает WAR
+        Files.createDirectories(new File(baseDir, "webapps").toPath());
+        tomcat.setBaseDir(baseDir.getAbsolutePath());
+        tomcat.setPort(port);
+        // сервлет JSP и MIME-типы из стандартного web.xml приложению не нужны
+        tomcat.setAddDefaultWebXmlToWebapp(false);
+
+        Connector connector = tomcat.getConnector();
+        connector.setProperty("maxThreads", String.valueOf(maxThreads));
+        connector.setProperty("acceptCount", "1000");
+        connector.setProperty("useVirtualThreads", String.valueOf(virtualThreads));
+        // приложение подбирает под режим размер пула соединений
+        System.setProperty("server.virtual_threads", String.valueOf(virtualThreads));
+
+        // загрузчик веб-приложения сначала ищет классы в WAR, поэтому модели на classpath теста ему не мешают
+        context = tomcat.addWebapp("", war.getAbsolutePath());
+        // контекст Spring поднимается при инициализации DispatcherServlet; без этого флага ошибка в нем
+        // не останавливает контекст Tomcat, и каждый запрос заново пытается инициализировать сервлет
+        ((StandardContext) context).setFailCtxIfServletStartFails(true);
+    }
+
+    String start() throws LifecycleException, IOException, InterruptedException {
+        long started = System.nanoTime();
+        tomcat.start();
+
+        // Tomcat не бросает исключение, если порт занят или контекст приложения не поднялся, а пишет ошибку в лог
+        if (tomcat.getConnector().getState() != LifecycleState.STARTED)
+            throw new LifecycleException("Порт " + port + " недоступен");
+        if (!context.getState().isAvailable())
+            throw new LifecycleException("Приложение не запустилось, причина - в логе выше");
+
+        System.out.printf("Tomcat started in %d ms%n", (System.nanoTime() - started) / 1_000_000);
+
+        String url = "http://localhost:" + port;
+        awaitReady(url);
+        System.out.printf("Application ready in %d ms%n", (System.nanoTime() - started) / 1_000_000);
+
+        return url;
+    }
+
+    // индексы в памяти строятся в фоне после старта, замер начинается только когда они готовы
+    private static void awaitReady(String url) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/metrics/ready")).build();
+        long deadline = System.nanoTime() + READY_TIMEOUT.toNanos();
+
+        while (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+            if (System.nanoTime() > deadline)
+                throw new IOException("Приложение не готово за " + READY_TIMEOUT.toMinutes() + " мин, см. " + url + "/metrics/ready");
+            Thread.sleep(100);
+        }
+    }
+
+    void await() {
+        tomcat.getServer().await();
+    }
+
+    @Override
+    public void close() throws LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+}
@@ -0,0 +1,166 @@
+package com.rxvlvxr.loadtest;
+
+import org.flywaydb.core.Flyway;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// нагрузочный тест на локальном PostgreSQL, см. docs/load-testing.md
+// использование:
+//   LoadTest generate [--books=2000000] [--people=300000] [--loaned=0.15] [--seed=42]
+//   LoadTest serve [--war=target/project2.war] [--port=8080] [--threads=200] [--virtual-threads=false]
+//   LoadTest plan-check [--war=target/project2.war] [--port=8080]
+//   LoadTest run [--url=http://host:port | --war=... [--virtual-threads=false]] [--duration=60] [--warmup=15] [--concurrency=32] [--rate=0] [--seed=42]
+// параметры подключения берутся из hibernate.properties приложения, системные свойства их переопределяют
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: LoadTest generate|serve|plan-check|run [--option=value ...]");
+            System.exit(2);
+        }
+
+        Map<String, String> options = options(args);
+        Properties properties = properties();
+
+        switch (args[0]) {
+            case "generate" -> generate(options, properties);
+            case "serve" -> serve(options);
+            case "plan-check" -> planCheck(options);
+            case "run" -> run(options, properties);
+            default -> {
+                System.err.println("Unknown command: " + args[0]);
+                System.exit(2);
+            }
+        }
+    }
+
+    private static void generate(Map<String, String> options, Properties properties) throws SQLException {
+        DatasetGenerator generator = new DatasetGenerator(
+                Long.parseLong(options.getOrDefault("books", "2000000")),
+                Long.parseLong(options.getOrDefault("people", "300000")),
+                Double.parseDouble(options.getOrDefault("loaned", "0.15")),
+                Long.parseLong(options.getOrDefault("seed", "42")),
+                Integer.parseInt(properties.getProperty("books.loan_period_days", "10")));
+
+        migrate(properties);
+        try (Connection connection = connect(properties)) {
+            generator.generate(connection);
+        }
+    }
+
+    // пустая база получает схему приложения (db/migration), уже созданная - недостающие миграции
+    private static void migrate(Properties properties) {
+        Flyway.configure()
+                .dataSource(properties.getProperty("hibernate.connection.url"),
+                        properties.getProperty("hibernate.connection.username"),
+                        properties.getProperty("hibernate.connection.password"))
+                .locations("classpath:db/migration")
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load()
+                .migrate();
+    }
+
+    private static void serve(Map<String, String> options) throws Exception {
+        EmbeddedServer server = server(options);
+        System.out.println("Listening on " + server.start());
+        server.await();
+    }
+
+    // проверка планов запросов репозиториев (docs/schema.md) на сгенерированных данных: приложение поднимается
+    // с schema.plan_check=true и сразу останавливается; если проверка не прошла, контекст не поднимается,
+    // и команда завершается с ошибкой, а список запросов с последовательным сканированием - в логе выше
+    private static void planCheck(Map<String, String> options) throws Exception {
+        System.setProperty("schema.plan_check", "true");
+
+        try (EmbeddedServer server = server(options)) {
+            server.start();
+            System.out.println("Query plan check passed");
+        }
+    }
+
+    private static void run(Map<String, String> options, Properties properties) throws Exception {
+        long books;
+        long people;
+        try (Connection connection = connect(properties)) {
+            books = maxId(connection, "book");
+            people = maxId(connection, "person");
+        }
+        if (books == 0 || people == 0) throw new IllegalStateException("Таблицы пусты, сначала LoadTest generate");
+
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "15")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "60")));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        // запросов в секунду (открытая модель), 0 - замкнутая модель с concurrency клиентами
+        double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        // без --url приложение поднимается во встроенном Tomcat в этой же JVM
+        EmbeddedServer server = options.containsKey("url") ? null : server(options);
+        try {
+            String url = server == null ? options.get("url") : server.start();
+
+            System.out.printf("%s: %d books, %d people%n", url, books, people);
+            TrafficDriver driver = new TrafficDriver(url, books, people, seed);
+            driver.run(concurrency, rate, warmup, duration);
+            driver.report(duration, System.out);
+        } finally {
+            if (server != null) server.close();
+        }
+    }
+
+    private static EmbeddedServer server(Map<String, String> options) throws IOException {
+        return new EmbeddedServer(new File(options.getOrDefault("war", "target/project2.war")),
+                Integer.parseInt(options.getOrDefault("port", "8080")),
+                Integer.parseInt(options.getOrDefault("threads", "200")),
+                Boolean.parseBoolean(options.getOrDefault("virtual-threads", "false")));
+    }
+
+    private static long maxId(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT coalesce(max(id), 0) FROM " + table)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static Connection connect(Properties properties) throws SQLException {
+        return DriverManager.getConnection(properties.getProperty("hibernate.connection.url"),
+                properties.getProperty("hibernate.connection.username"),
+                properties.getProperty("hibernate.connection.password"));
+    }
+
+    // hibernate.properties приложения, поверх него системные свойства (как Environment в SpringConfig)
+    private static Properties properties() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = LoadTest.class.getResourceAsStream("/hibernate.properties")) {
+            if (in != null) properties.load(in);
+        }
+        properties.putAll(System.getProperties());
+
+        return properties;
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--") || !args[i].contains("="))
+                throw new IllegalArgumentException("Ожидается --option=value: " + args[i]);
+
+            options.put(args[i].substring(2, args[i].indexOf('=')), args[i].substring(args[i].indexOf('=') + 1));
+        }
+
+        return options;
+    }
+}
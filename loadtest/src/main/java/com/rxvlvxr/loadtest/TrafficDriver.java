@@ -0,0 +1,286 @@
+package com.rxvlvxr.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// смешанный трафик по маршрутам приложения, время ответа каждого маршрута пишется в гистограмму HdrHistogram,
+// запросы прогрева не учитываются
+// замкнутая модель (rate = 0): каждый из concurrency клиентов отправляет следующий запрос сразу после ответа
+// на предыдущий, поэтому медленный сервер сам снижает поток запросов
+// открытая модель (rate > 0): запросы отправляются по расписанию с заданной общей частотой, каждый клиент -
+// свою долю; время ответа считается от запланированного момента отправки, поэтому запросы, которые ждали
+// освобождения клиента из-за медленного ответа, учитываются со временем ожидания (без coordinated omission)
+final class TrafficDriver {
+    // маршрут и его доля в общем трафике (в процентах)
+    enum Route {
+        BOOKS_PAGE("GET /books?page", 45),
+        SEARCH_PREFIX("POST /books/search", 10),
+        SEARCH_FULL("GET /books/search/full", 10),
+        PERSON("GET /people/{id}", 20),
+        ASSIGN("PATCH /books/{id}/assign", 10),
+        RELEASE("PATCH /books/{id}/release", 5);
+
+        private final String label;
+        private final int weight;
+
+        Route(String label, int weight) {
+            this.label = label;
+            this.weight = weight;
+        }
+    }
+
+    private static final int BOOKS_PER_PAGE = 20;
+    // в открытой модели отставание от расписания может превысить таймаут запроса
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final String baseUrl;
+    private final long books;
+    private final long people;
+    private final long seed;
+    private final HttpClient client;
+    // активность читателей распределена так же, как выдачи в DatasetGenerator
+    private final Zipf readers;
+
+    private final Stats[] stats = new Stats[Route.values().length];
+    // книги, выданные самим тестом: их же и возвращаем, чтобы возвраты не упирались в свободные книги
+    private final Queue<Long> loanedByTest = new ConcurrentLinkedQueue<>();
+    private volatile boolean recording;
+    // запросы открытой модели, к запланированному моменту которых клиент еще ждал предыдущий ответ
+    private final LongAdder late = new LongAdder();
+
+    TrafficDriver(String baseUrl, long books, long people, long seed) {
+        this.baseUrl = baseUrl;
+        this.books = books;
+        this.people = people;
+        this.seed = seed;
+        this.readers = new Zipf(people, Zipf.READERS_EXPONENT, Zipf.READERS_OFFSET);
+        // перенаправления не выполняем: время ответа - это время самого PATCH, а не следующей страницы
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        for (Route route : Route.values()) stats[route.ordinal()] = new Stats();
+    }
+
+    // rate - запросов в секунду на все приложение, 0 - замкнутая модель
+    void run(int concurrency, double rate, Duration warmup, Duration duration) throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + warmup.toNanos() + duration.toNanos();
+        // в открытой модели у каждого клиента свой шаг расписания, клиенты сдвинуты друг относительно друга
+        long interval = rate > 0 ? Math.max(1, (long) (concurrency * 1e9 / rate)) : 0;
+        CountDownLatch done = new CountDownLatch(concurrency);
+
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            Random random = new Random(seed + i);
+            long first = start + interval * i / concurrency;
+            Thread client = new Thread(() -> {
+                try {
+                    if (interval == 0) while (System.nanoTime() < end) request(random, System.nanoTime());
+                    else for (long scheduled = first; scheduled < end; scheduled += interval) {
+                        if (recording && System.nanoTime() > scheduled) late.increment();
+                        waitUntil(scheduled);
+                        request(random, scheduled);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + i);
+            client.setDaemon(true);
+            clients.add(client);
+        }
+
+        clients.forEach(Thread::start);
+
+        if (rate > 0) System.out.printf("Warmup %d s, open model: %.1f req/s, %d clients%n", warmup.toSeconds(), rate, concurrency);
+        else System.out.printf("Warmup %d s, closed model: %d clients%n", warmup.toSeconds(), concurrency);
+        Thread.sleep(warmup.toMillis());
+        // все, что записано за время прогрева, отбрасывается
+        for (Stats route : stats) route.reset();
+        late.reset();
+        recording = true;
+        System.out.printf("Measuring %d s%n", duration.toSeconds());
+
+        done.await();
+    }
+
+    private static void waitUntil(long nanos) {
+        for (long now = System.nanoTime(); now < nanos; now = System.nanoTime()) LockSupport.parkNanos(nanos - now);
+    }
+
+    // scheduled - момент, от которого считается время ответа: в открытой модели запланированный, а не фактический
+    private void request(Random random, long scheduled) {
+        Route route = pick(random);
+        HttpRequest request = build(route, random);
+
+        int status;
+        try {
+            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long micros = (System.nanoTime() - scheduled) / 1000;
+
+        if (route == Route.ASSIGN && status == 302) loanedByTest.add(bookId(request));
+
+        if (recording) stats[route.ordinal()].record(micros, status);
+    }
+
+    private static Route pick(Random random) {
+        int roll = random.nextInt(100);
+        for (Route route : Route.values()) {
+            roll -= route.weight;
+            if (roll < 0) return route;
+        }
+
+        return Route.BOOKS_PAGE;
+    }
+
+    private HttpRequest build(Route route, Random random) {
+        switch (route) {
+            case BOOKS_PAGE -> {
+                // в основном первые страницы каталога, но каждый пятый запрос - любая страница (глубокий OFFSET)
+                long pages = Math.max(1, books / BOOKS_PER_PAGE);
+                long page = random.nextInt(5) == 0 ? (long) (random.nextDouble() * pages) : random.nextInt(10);
+
+                return get("/books?page=" + page + "&books_per_page=" + BOOKS_PER_PAGE);
+            }
+            case SEARCH_PREFIX -> {
+                String word = Vocabulary.TITLE_WORDS[random.nextInt(Vocabulary.TITLE_WORDS.length)];
+
+                return form("/books/search", "title=" + encode(word.substring(0, Math.min(word.length(), 3 + random.nextInt(3)))));
+            }
+            case SEARCH_FULL -> {
+                String word = Vocabulary.TITLE_WORDS[random.nextInt(Vocabulary.TITLE_WORDS.length)].toLowerCase();
+
+                return get("/books/search/full?q=" + encode(word));
+            }
+            case PERSON -> {
+                // страницы активных читателей открывают чаще
+                return get("/people/" + Zipf.scatter(readers.next(random), people));
+            }
+            case ASSIGN -> {
+                long bookId = 1 + (long) (random.nextDouble() * books);
+                long personId = Zipf.scatter(readers.next(random), people);
+
+                // так же, как форма на странице книги: POST со скрытым полем _method
+                return form("/books/" + bookId + "/assign", "_method=patch&id=" + personId);
+            }
+            default -> {
+                Long bookId = loanedByTest.poll();
+                if (bookId == null) bookId = 1 + (long) (random.nextDouble() * books);
+
+                return form("/books/" + bookId + "/release", "_method=patch");
+            }
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Accept-Encoding", "gzip")
+                .timeout(Duration.ofSeconds(60))
+                .GET()
+                .build();
+    }
+
+    private HttpRequest form(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Accept-Encoding", "gzip")
+                .header("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8")
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    // id книги из пути /books/{id}/assign
+    private static long bookId(HttpRequest request) {
+        String path = request.uri().getPath();
+
+        return Long.parseLong(path.substring("/books/".length(), path.lastIndexOf('/')));
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    void report(Duration duration, PrintStream out) {
+        double seconds = duration.toMillis() / 1000.0;
+        Histogram total = new Histogram(MAX_LATENCY_MICROS, 3);
+        long totalConflicts = 0;
+        long totalErrors = 0;
+
+        out.printf("%-28s %9s %9s %7s %7s %9s %9s %9s %9s%n",
+                "route", "requests", "req/s", "409", "errors", "p50 ms", "p95 ms", "p99 ms", "max ms");
+
+        for (Route route : Route.values()) {
+            Stats routeStats = stats[route.ordinal()];
+            Histogram histogram = routeStats.recorder.getIntervalHistogram();
+
+            total.add(histogram);
+            totalConflicts += routeStats.conflicts.sum();
+            totalErrors += routeStats.errors.sum();
+
+            line(out, route.label, histogram, seconds, routeStats.conflicts.sum(), routeStats.errors.sum());
+        }
+
+        line(out, "total", total, seconds, totalConflicts, totalErrors);
+        if (late.sum() > 0)
+            out.printf("%d requests started behind schedule (client busy): the server did not keep up with the rate%n", late.sum());
+    }
+
+    private static void line(PrintStream out, String label, Histogram histogram, double seconds, long conflicts, long errors) {
+        out.printf("%-28s %9d %9.1f %7d %7d %9.1f %9.1f %9.1f %9.1f%n", label,
+                histogram.getTotalCount(), histogram.getTotalCount() / seconds, conflicts, errors,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(95)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    // ответ 409 (книга уже выдана или уже свободна) - ожидаемый результат гонки, а не ошибка;
+    // ошибки - ответы 4xx/5xx кроме 409 и сетевые сбои
+    private static final class Stats {
+        private final Recorder recorder = new Recorder(MAX_LATENCY_MICROS, 3);
+        private final LongAdder conflicts = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        void record(long micros, int status) {
+            recorder.recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+
+            if (status == 409) conflicts.increment();
+            else if (status < 200 || status >= 400) errors.increment();
+        }
+
+        void reset() {
+            recorder.reset();
+            conflicts.reset();
+            errors.reset();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.rxvlvxr.loadtest;
+
+import java.util.Random;
+
+// словари для синтетических данных; все строки подходят под @Pattern из моделей Book и Person:
+// ФИО - три слова с заглавной буквы, автор - имя и фамилия, название - слова из кириллицы без цифр
+final class Vocabulary {
+    static final String[] SURNAMES = {"Иванов", "Смирнов", "Кузнецов", "Попов", "Васильев", "Петров", "Соколов",
+            "Михайлов", "Новиков", "Федоров", "Морозов", "Волков", "Алексеев", "Лебедев", "Семенов", "Егоров",
+            "Павлов", "Козлов", "Степанов", "Николаев", "Орлов", "Андреев", "Макаров", "Никитин", "Захаров",
+            "Зайцев", "Соловьев", "Борисов", "Яковлев", "Григорьев", "Романов", "Воробьев", "Сергеев", "Кузьмин",
+            "Фролов", "Александров", "Дмитриев", "Королев", "Гусев", "Киселев", "Ильин", "Максимов", "Поляков",
+            "Сорокин", "Виноградов", "Ковалев", "Белов", "Медведев", "Антонов", "Тарасов", "Жуков", "Баранов",
+            "Филиппов", "Комаров", "Давыдов", "Беляев", "Герасимов", "Богданов", "Осипов", "Сидоров", "Матвеев",
+            "Титов", "Марков", "Миронов", "Крылов", "Куликов", "Карпов", "Власов", "Мельников", "Денисов",
+            "Гаврилов", "Тихонов", "Казаков", "Афанасьев", "Данилов", "Савельев", "Тимофеев", "Фомин", "Чернов",
+            "Абрамов", "Мартынов", "Ефимов", "Федотов", "Щербаков", "Назаров", "Калинин", "Исаев", "Чернышев",
+            "Быков", "Маслов", "Родионов", "Коновалов", "Лазарев", "Воронин", "Климов", "Филатов", "Пономарев",
+            "Голубев", "Кудрявцев", "Прохоров", "Наумов", "Потапов", "Журавлев", "Овчинников", "Трофимов",
+            "Леонов", "Соболев", "Ермаков", "Колесников", "Гончаров", "Емельянов", "Никифоров", "Грачев",
+            "Котов", "Гришин", "Ефремов", "Архипов", "Громов", "Кириллов", "Малышев", "Панов", "Моисеев",
+            "Румянцев", "Акимов", "Кондратьев", "Бирюков", "Горбунов", "Анисимов", "Еремин", "Тихомиров"};
+    static final String[] FIRST_NAMES = {"Александр", "Алексей", "Анатолий", "Андрей", "Антон", "Аркадий",
+            "Арсений", "Артем", "Борис", "Вадим", "Валентин", "Валерий", "Василий", "Виктор", "Виталий",
+            "Владимир", "Владислав", "Всеволод", "Вячеслав", "Геннадий", "Георгий", "Герман", "Глеб", "Григорий",
+            "Давид", "Даниил", "Денис", "Дмитрий", "Евгений", "Егор", "Иван", "Игорь", "Илья", "Кирилл",
+            "Константин", "Лев", "Леонид", "Макар", "Максим", "Марк", "Матвей", "Михаил", "Никита", "Николай",
+            "Олег", "Павел", "Петр", "Роман", "Руслан", "Святослав", "Семен", "Сергей", "Станислав", "Степан",
+            "Тимофей", "Тимур", "Федор", "Филипп", "Эдуард", "Юрий", "Яков", "Ярослав"};
+    static final String[] PATRONYMICS = {"Александрович", "Алексеевич", "Анатольевич", "Андреевич", "Антонович",
+            "Аркадьевич", "Борисович", "Вадимович", "Валентинович", "Валерьевич", "Васильевич", "Викторович",
+            "Витальевич", "Владимирович", "Владиславович", "Вячеславович", "Геннадьевич", "Георгиевич",
+            "Германович", "Глебович", "Григорьевич", "Давидович", "Даниилович", "Денисович", "Дмитриевич",
+            "Евгеньевич", "Егорович", "Иванович", "Игоревич", "Ильич", "Кириллович", "Константинович", "Львович",
+            "Леонидович", "Максимович", "Маркович", "Матвеевич", "Михайлович", "Никитич", "Николаевич",
+            "Олегович", "Павлович", "Петрович", "Романович", "Русланович", "Семенович", "Сергеевич",
+            "Станиславович", "Степанович", "Тимофеевич", "Тимурович", "Федорович", "Филиппович", "Эдуардович",
+            "Юрьевич", "Яковлевич", "Ярославович"};
+    static final String[] TITLE_WORDS = {"Война", "Мир", "Солярис", "Пикник", "Обочина", "Улитка", "Склон",
+            "Понедельник", "Суббота", "Город", "Град", "Дорога", "Море", "Остров", "Берег", "Река", "Лес", "Сад",
+            "Дом", "Ночь", "День", "Утро", "Вечер", "Зима", "Лето", "Осень", "Весна", "Звезда", "Небо", "Ветер",
+            "Огонь", "Камень", "Тень", "Свет", "Память", "Время", "Сон", "Песня", "Сказка", "Легенда", "Хроника",
+            "Повесть", "История", "Тайна", "Загадка", "Путь", "Возвращение", "Прощание", "Встреча", "Письмо",
+            "Капитан", "Доктор", "Мастер", "Учитель", "Странник", "Охотник", "Художник", "Музыкант", "Старик",
+            "Мальчик", "Девочка", "Сестра", "Брат", "Отец", "Мать", "Друг", "Враг", "Король", "Королева",
+            "Последний", "Первый", "Белый", "Черный", "Красный", "Тихий", "Далекий", "Забытый", "Серебряный",
+            "Золотой", "Северный", "Южный", "Долгий", "Старый", "Новый", "Синий", "Зеленый", "Ясный", "Горький"};
+    static final String[] TITLE_LINKS = {"и", "в", "на", "за", "над", "под", "о", "без", "для", "через"};
+
+    // уникальных ФИО не больше, чем сочетаний фамилии, имени и отчества
+    static final long MAX_PEOPLE = (long) SURNAMES.length * FIRST_NAMES.length * PATRONYMICS.length;
+
+    private Vocabulary() {
+    }
+
+    // n-е уникальное ФИО; соседние номера дают разные фамилии, поэтому список людей выглядит перемешанным
+    static String personName(long n) {
+        int surname = (int) (n % SURNAMES.length);
+        long rest = n / SURNAMES.length;
+        int firstName = (int) (rest % FIRST_NAMES.length);
+        int patronymic = (int) (rest / FIRST_NAMES.length % PATRONYMICS.length);
+
+        return SURNAMES[surname] + " " + FIRST_NAMES[firstName] + " " + PATRONYMICS[patronymic];
+    }
+
+    // автор: имя и фамилия, как в форме книги ("Станислав Лем")
+    static String author(Random random) {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + SURNAMES[random.nextInt(SURNAMES.length)];
+    }
+
+    // название из одного-четырех слов, первое слово с заглавной буквы
+    static String title(Random random) {
+        StringBuilder title = new StringBuilder(TITLE_WORDS[random.nextInt(TITLE_WORDS.length)]);
+        int words = random.nextInt(4);
+
+        for (int i = 0; i < words; i++) {
+            if (random.nextInt(3) == 0) title.append(' ').append(TITLE_LINKS[random.nextInt(TITLE_LINKS.length)]);
+            title.append(' ').append(TITLE_WORDS[random.nextInt(TITLE_WORDS.length)].toLowerCase());
+        }
+
+        return title.toString();
+    }
+}
@@ -0,0 +1,38 @@
+package com.rxvlvxr.loadtest;
+
+import java.util.Random;
+
+// номера 1..n с распределением Ципфа-Мандельброта: вероятность номера k пропорциональна 1 / (k + offset)^exponent,
+// малые номера выпадают намного чаще, а offset сглаживает самую верхушку (иначе первый номер забирает слишком много)
+// выборка - обратным преобразованием непрерывного степенного распределения, exponent > 0 и не равен 1
+final class Zipf {
+    // распределение читателей для выдач и трафика: примерно 60% людей без книг, 3% держат пять книг и больше
+    static final double READERS_EXPONENT = 0.9;
+    static final int READERS_OFFSET = 100;
+
+    private final long n;
+    private final int offset;
+    private final double oneMinusS;
+    private final double low;
+    private final double high;
+
+    Zipf(long n, double exponent, int offset) {
+        this.n = n;
+        this.offset = offset;
+        this.oneMinusS = 1 - exponent;
+        this.low = Math.pow(offset + 1, oneMinusS);
+        this.high = Math.pow(n + offset + 1, oneMinusS);
+    }
+
+    long next(Random random) {
+        double x = Math.pow(low + random.nextDouble() * (high - low), 1 / oneMinusS) - offset;
+
+        return Math.min(n, Math.max(1, (long) x));
+    }
+
+    // номер 1..n переставляется во взаимно однозначный номер 1..n (умножение на простое число по модулю n),
+    // чтобы самые частые значения не были подряд идущими id
+    static long scatter(long rank, long n) {
+        return Math.floorMod((rank - 1) * 2654435761L, n) + 1;
+    }
+}
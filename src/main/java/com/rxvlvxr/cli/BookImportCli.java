@@ -0,0 +1,115 @@
+package com.rxvlvxr.cli;
+
+import com.rxvlvxr.dto.ImportReport;
+import com.rxvlvxr.util.BookImporter;
+import com.rxvlvxr.util.BookValidator;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.hibernate.validator.messageinterpolation.ParameterMessageInterpolator;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+// импорт книг из командной строки без запуска веб-приложения
+// использование: BookImportCli <файл.csv|файл.ndjson> [csv|ndjson] [--app=http://host:8080 ...]
+// параметры подключения берутся из hibernate.properties
+// запущенные экземпляры приложения не видят книги, записанные в обход них (префиксный и полнотекстовый индексы,
+// кэш запросов, ETag каталога), пока не получат POST /books/import/refresh с диапазоном id загруженных книг:
+// для каждого --app он отправляется после импорта, остальные экземпляры увидят книги после перезапуска
+public class BookImportCli {
+    private static final String USAGE = "Usage: BookImportCli <file.csv|file.ndjson> [csv|ndjson] [--app=http://host:8080 ...]";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<String> positional = new ArrayList<>();
+        List<String> apps = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--app=")) apps.add(arg.substring("--app=".length()));
+            else positional.add(arg);
+        }
+
+        if (positional.isEmpty()) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        String file = positional.get(0);
+        BookImporter.Format format = null;
+        try {
+            format = positional.size() > 1
+                    ? BookImporter.Format.valueOf(positional.get(1).toUpperCase(Locale.ROOT))
+                    : file.endsWith(".ndjson") || file.endsWith(".jsonl") ? BookImporter.Format.NDJSON : BookImporter.Format.CSV;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown format: " + positional.get(1) + "\n" + USAGE);
+            System.exit(2);
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = BookImportCli.class.getResourceAsStream("/hibernate.properties")) {
+            properties.load(in);
+        }
+
+        int chunkSize = Integer.parseInt(properties.getProperty("books.import.chunk_size", "5000"));
+        String url = properties.getProperty("hibernate.connection.url");
+        String username = properties.getProperty("hibernate.connection.username");
+        String password = properties.getProperty("hibernate.connection.password");
+
+        // вне контейнера сервлетов нет реализации Jakarta EL, а сообщения ограничений Book ее и не используют
+        try (ValidatorFactory validatorFactory = Validation.byDefaultProvider().configure()
+                .messageInterpolator(new ParameterMessageInterpolator())
+                .buildValidatorFactory();
+             Reader reader = new InputStreamReader(Files.newInputStream(Paths.get(file)), StandardCharsets.UTF_8)) {
+            BookImporter importer = new BookImporter(new SpringValidatorAdapter(validatorFactory.getValidator()),
+                    new BookValidator(), chunkSize);
+
+            ImportReport report = importer.run(reader, format, () -> DriverManager.getConnection(url, username, password));
+
+            report.getErrors().forEach(error -> System.err.println(error.getLine() + ": " + error.getMessage()));
+            System.out.println("Imported: " + report.getImported() + ", rejected: " + report.getRejected());
+
+            boolean refreshed = true;
+            if (report.getImported() > 0) {
+                System.out.println("Imported ids: " + report.getFirstId() + ".." + report.getLastId());
+
+                for (String app : apps) refreshed &= refresh(app, report.getFirstId(), report.getLastId());
+                if (apps.isEmpty())
+                    System.out.println("Running instances will not see the books until POST /books/import/refresh?from=" +
+                            report.getFirstId() + "&to=" + report.getLastId() + " or a restart");
+            }
+
+            if (report.getRejected() > 0 || !refreshed) System.exit(1);
+        }
+    }
+
+    private static boolean refresh(String app, int fromId, int toId) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(app.replaceAll("/+$", "") +
+                        "/books/import/refresh?from=" + fromId + "&to=" + toId))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+
+        try {
+            int status = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status / 100 == 2) return true;
+
+            System.err.println("Refresh of " + app + " failed: HTTP " + status);
+        } catch (IOException e) {
+            System.err.println("Refresh of " + app + " failed: " + e.getMessage());
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+package com.rxvlvxr.cli;
+
+import com.rxvlvxr.config.SpringConfig;
+import jakarta.servlet.ServletContext;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+// учебный запуск для архива CDS (профиль fast-startup): поднимает тот же контекст, что и веб-приложение,
+// чтобы JVM записала список загруженных при старте классов, и сразу завершается
+// нужна база данных из hibernate.properties (параметры подключения можно переопределить через -D)
+public class StartupTraining {
+
+    public static void main(String[] args) {
+        // переиндексация идет в фоне и не нужна для списка классов старта
+        System.setProperty("books.search.reindex_on_startup", "never");
+
+        try (AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext()) {
+            context.setServletContext(servletContext());
+            context.register(SpringConfig.class);
+            context.refresh();
+        }
+
+        // потоки пулов и Hibernate Search не должны держать JVM
+        System.exit(0);
+    }
+
+    // контейнера сервлетов нет, а конфигурации Spring MVC нужен только сам объект ServletContext
+    private static ServletContext servletContext() {
+        return (ServletContext) Proxy.newProxyInstance(StartupTraining.class.getClassLoader(),
+                new Class<?>[]{ServletContext.class}, (proxy, method, args) -> {
+                    Class<?> type = method.getReturnType();
+
+                    if (type == boolean.class) return false;
+                    if (type == int.class) return 0;
+                    if (type == java.util.Enumeration.class) return Collections.emptyEnumeration();
+                    if (type == java.util.Set.class) return Collections.emptySet();
+                    if (method.getName().equals("getContextPath")) return "";
+                    if (method.getName().equals("toString")) return "StartupTraining";
+
+                    return null;
+                });
+    }
+}
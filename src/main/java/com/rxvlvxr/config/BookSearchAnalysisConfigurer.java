@@ -0,0 +1,26 @@
+package com.rxvlvxr.config;
+
+import org.apache.lucene.analysis.core.LowerCaseFilterFactory;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilterFactory;
+import org.apache.lucene.analysis.pattern.PatternReplaceCharFilterFactory;
+import org.apache.lucene.analysis.standard.StandardTokenizerFactory;
+import org.hibernate.search.backend.lucene.analysis.LuceneAnalysisConfigurationContext;
+import org.hibernate.search.backend.lucene.analysis.LuceneAnalysisConfigurer;
+
+// настройка анализатора для полнотекстового индекса книг
+public class BookSearchAnalysisConfigurer implements LuceneAnalysisConfigurer {
+
+    public static final String BOOK_TEXT = "book_text";
+
+    @Override
+    public void configure(LuceneAnalysisConfigurationContext context) {
+        // разбиваем текст на слова, приводим к нижнему регистру, заменяем ё на е и убираем диакритику
+        context.analyzer(BOOK_TEXT).custom()
+                .tokenizer(StandardTokenizerFactory.class)
+                .charFilter(PatternReplaceCharFilterFactory.class)
+                .param("pattern", "[ёЁ]")
+                .param("replacement", "е")
+                .tokenFilter(LowerCaseFilterFactory.class)
+                .tokenFilter(ASCIIFoldingFilterFactory.class);
+    }
+}
@@ -0,0 +1,156 @@
+package com.rxvlvxr.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+// сжатие gzip для HTML-страниц (Thymeleaf), JSON-ответов и текстовых метрик
+// ответ сжимается потоково, по мере записи, без буферизации всей страницы в памяти
+public class CompressionFilter extends OncePerRequestFilter {
+    private static final Set<String> COMPRESSIBLE_TYPES = Set.of("text/html", "application/json", "text/plain");
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+
+        GzipResponse gzipResponse = new GzipResponse(response, gzip);
+        try {
+            chain.doFilter(request, gzipResponse);
+        } finally {
+            gzipResponse.finish();
+        }
+    }
+
+    private static final class GzipResponse extends HttpServletResponseWrapper {
+        private final boolean gzipAccepted;
+        private GzipOutputStream outputStream;
+        private PrintWriter writer;
+        // решение о сжатии принимается при первой записи тела, когда тип содержимого уже известен
+        private Boolean compress;
+
+        private GzipResponse(HttpServletResponse response, boolean gzipAccepted) {
+            super(response);
+            this.gzipAccepted = gzipAccepted;
+        }
+
+        private boolean compress() throws IOException {
+            if (compress == null) {
+                String contentType = getContentType();
+                boolean compressible = contentType != null
+                        && COMPRESSIBLE_TYPES.contains(contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT));
+
+                if (compressible) addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+                compress = compressible && gzipAccepted && !containsHeader(HttpHeaders.CONTENT_ENCODING);
+
+                if (compress) {
+                    setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                    // длина несжатого тела больше не соответствует ответу
+                    if (containsHeader(HttpHeaders.CONTENT_LENGTH)) super.setContentLengthLong(-1);
+                    outputStream = new GzipOutputStream(super.getOutputStream());
+                }
+            }
+
+            return compress;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            return compress() ? outputStream : super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (!compress()) return super.getWriter();
+
+            if (writer == null)
+                writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            if (compress == null || !compress) super.setContentLength(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (compress == null || !compress) super.setContentLengthLong(len);
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name) || compress == null || !compress)
+                super.setHeader(name, value);
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) writer.flush();
+            if (outputStream != null) outputStream.flush();
+            super.flushBuffer();
+        }
+
+        private void finish() throws IOException {
+            if (writer != null) writer.close();
+            else if (outputStream != null) outputStream.close();
+        }
+    }
+
+    private static final class GzipOutputStream extends ServletOutputStream {
+        private final ServletOutputStream target;
+        private final GZIPOutputStream gzip;
+
+        private GzipOutputStream(ServletOutputStream target) throws IOException {
+            this.target = target;
+            // syncFlush: flush() отправляет клиенту все уже записанные данные
+            this.gzip = new GZIPOutputStream(target, 8192, true);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            gzip.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            gzip.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            gzip.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            gzip.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return target.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            target.setWriteListener(writeListener);
+        }
+    }
+}
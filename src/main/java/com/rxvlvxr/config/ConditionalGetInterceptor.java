@@ -0,0 +1,44 @@
+package com.rxvlvxr.config;
+
+import com.rxvlvxr.services.CatalogVersion;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.time.Duration;
+
+// условный GET для страниц каталога: если у клиента страница той же версии каталога (If-None-Match / If-Modified-Since),
+// отвечаем 304 до вызова контроллера, то есть без запросов к базе данных и рендеринга Thymeleaf
+public class ConditionalGetInterceptor implements HandlerInterceptor {
+    private final CatalogVersion catalogVersion;
+    // для страниц, содержимое которых меняется и со временем (просрочка книг), версия дополнительно
+    // меняется раз в указанный интервал; Duration.ZERO - страница зависит только от данных
+    private final long timeStepMillis;
+
+    public ConditionalGetInterceptor(CatalogVersion catalogVersion, Duration timeStep) {
+        this.catalogVersion = catalogVersion;
+        this.timeStepMillis = timeStep.toMillis();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())) return true;
+
+        String eTag = "W/\"" + catalogVersion.getVersion();
+        long lastModified = catalogVersion.getLastModified();
+
+        if (timeStepMillis > 0) {
+            long step = System.currentTimeMillis() / timeStepMillis;
+
+            eTag += "-" + step;
+            lastModified = Math.max(lastModified, step * timeStepMillis);
+        }
+
+        // браузер хранит страницу, но перед каждым показом проверяет ее версию
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+
+        return !new ServletWebRequest(request, response).checkNotModified(eTag + "\"", lastModified);
+    }
+}
@@ -0,0 +1,45 @@
+package com.rxvlvxr.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.HibernateMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+// публикует в реестр метрик статистику Hibernate (сессии, запросы, кэш второго уровня, транзакции) и показатели JVM
+@Component
+public class MetricsBinder {
+
+    private final MeterRegistry meterRegistry;
+    private final EntityManagerFactory entityManagerFactory;
+    private final JvmGcMetrics jvmGcMetrics = new JvmGcMetrics();
+
+    @Autowired
+    public MetricsBinder(MeterRegistry meterRegistry, EntityManagerFactory entityManagerFactory) {
+        this.meterRegistry = meterRegistry;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    public void bind() {
+        // статистика собирается, только если включен hibernate.generate_statistics
+        HibernateMetrics.monitor(meterRegistry, entityManagerFactory.unwrap(SessionFactory.class), "project2");
+
+        new JvmMemoryMetrics().bindTo(meterRegistry);
+        new JvmThreadMetrics().bindTo(meterRegistry);
+        new ProcessorMetrics().bindTo(meterRegistry);
+        jvmGcMetrics.bindTo(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() {
+        jvmGcMetrics.close();
+    }
+}
@@ -8,7 +8,10 @@ import org.springframework.web.filter.CharacterEncodingFilter;
 import org.springframework.web.filter.HiddenHttpMethodFilter;
 import org.springframework.web.servlet.support.AbstractAnnotationConfigDispatcherServletInitializer;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.EnumSet;
+import java.util.Properties;
 
 public class MySpringMvcDispatcherServletInitializer extends AbstractAnnotationConfigDispatcherServletInitializer {
     @Override
@@ -33,6 +36,19 @@ public class MySpringMvcDispatcherServletInitializer extends AbstractAnnotationC
         super.onStartup(aServletContext);
         registerCharacterEncodingFilter(aServletContext);
         registerHiddenFieldFilter(aServletContext);
+        registerCompressionFilter(aServletContext);
+    }
+
+    // загружаем hibernate.properties для настроек, которые нужны до создания контекста Spring
+    private Properties loadProperties() throws ServletException {
+        Properties properties = new Properties();
+        try (InputStream in = getClass().getResourceAsStream("/hibernate.properties")) {
+            if (in != null) properties.load(in);
+        } catch (IOException e) {
+            throw new ServletException(e);
+        }
+
+        return properties;
     }
 
     /*
@@ -44,6 +60,15 @@ public class MySpringMvcDispatcherServletInitializer extends AbstractAnnotationC
                 new HiddenHttpMethodFilter()).addMappingForUrlPatterns(null, true, "/*");
     }
 
+    // сжатие gzip HTML и JSON ответов (server.compression в hibernate.properties)
+    private void registerCompressionFilter(ServletContext aContext) throws ServletException {
+        if (!Boolean.parseBoolean(loadProperties().getProperty("server.compression", "true"))) return;
+
+        FilterRegistration.Dynamic compression = aContext.addFilter("compressionFilter", new CompressionFilter());
+        compression.setAsyncSupported(true);
+        compression.addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, "/*");
+    }
+
     // настройки кодировки
     private void registerCharacterEncodingFilter(ServletContext aContext) {
         EnumSet<DispatcherType> dispatcherTypes = EnumSet.of(DispatcherType.REQUEST, DispatcherType.FORWARD);
@@ -0,0 +1,22 @@
+package com.rxvlvxr.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Hibernate сам загружает hibernate.properties с classpath и, увидев hibernate.connection.username/password,
+// запрашивает соединения через getConnection(user, password), который пул HikariCP не поддерживает;
+// учетные данные уже заданы в самом пуле, поэтому такой вызов переадресуем в getConnection()
+public class PoolDataSourceAdapter extends DelegatingDataSource {
+
+    public PoolDataSourceAdapter(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+}
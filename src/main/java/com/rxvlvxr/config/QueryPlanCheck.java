@@ -0,0 +1,320 @@
+package com.rxvlvxr.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rxvlvxr.repositories.BooksRepository;
+import com.rxvlvxr.repositories.PeopleRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// проверка при старте (schema.plan_check=true) на базе, заполненной данными (например, loadtest generate):
+// запросы репозиториев выполняются с параметрами из существующих строк, их SQL и параметры перехватываются
+// и повторяются через EXPLAIN; если PostgreSQL читает book или person последовательным сканированием с условием
+// или сортировкой (значит, для запроса нет подходящего индекса), контекст не поднимается
+// полный проход без условия (count(*) для страницы) нарушением не считается
+// список проверяемых методов берется из интерфейсов репозиториев: если для метода нет примера вызова, контекст
+// тоже не поднимается, поэтому новый запрос не останется без проверки
+@Component
+public class QueryPlanCheck {
+    private static final Logger log = LoggerFactory.getLogger(QueryPlanCheck.class);
+    private static final Set<String> CHECKED_TABLES = Set.of("book", "person");
+    private static final List<Class<?>> REPOSITORIES = List.of(BooksRepository.class, PeopleRepository.class);
+    // перехваченные запросы текущего потока, null - перехват выключен
+    private static final ThreadLocal<List<CapturedStatement>> captured = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final long minRows;
+    private final DataSource dataSource;
+    private final BooksRepository booksRepository;
+    private final PeopleRepository peopleRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    public QueryPlanCheck(@Value("${schema.plan_check:false}") boolean enabled,
+                          @Value("${schema.plan_check.min_rows:10000}") long minRows,
+                          DataSource dataSource, BooksRepository booksRepository, PeopleRepository peopleRepository,
+                          EntityManagerFactory entityManagerFactory, PlatformTransactionManager transactionManager) {
+        this.enabled = enabled;
+        this.minRows = minRows;
+        this.dataSource = dataSource;
+        this.booksRepository = booksRepository;
+        this.peopleRepository = peopleRepository;
+        this.entityManagerFactory = entityManagerFactory;
+        // пишущая транзакция, чтобы запросы шли в основную базу, а не на реплику
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // соединения Hibernate, у которых запоминается SQL и параметры выполненных запросов (только во время проверки)
+    public static DataSource capturing(DataSource dataSource) {
+        return new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return capturingConnection(super.getConnection());
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return capturingConnection(super.getConnection(username, password));
+            }
+        };
+    }
+
+    @PostConstruct
+    public void check() throws SQLException {
+        if (!enabled) return;
+
+        Sample sample = sample();
+        // ответы из кэша второго уровня и кэша запросов не доходят до базы данных
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAll();
+
+        // примеры вызовов по "Репозиторий.метод"
+        Map<String, Runnable> queries = new LinkedHashMap<>();
+        // методы, которые намеренно читают таблицу целиком (построение индексов в памяти, выгрузка):
+        // последовательное сканирование для них допустимо, проверяется только то, что запрос выполняется
+        Map<String, Runnable> fullReads = new LinkedHashMap<>();
+
+        queries.put("BooksRepository.findAllBy", () -> booksRepository.findAllBy(PageRequest.of(1, 20, Sort.by("year"))));
+        queries.put("BooksRepository.findByTitleStartingWith", () -> booksRepository.findByTitleStartingWith(sample.titlePrefix));
+        queries.put("BooksRepository.findSearchItemsByIdIn", () -> booksRepository.findSearchItemsByIdIn(List.of(sample.bookId)));
+        queries.put("BooksRepository.findWithPersonById", () -> booksRepository.findWithPersonById(sample.bookId));
+        queries.put("BooksRepository.findAfterYearAndId",
+                () -> booksRepository.findAfterYearAndId(sample.year, sample.bookId, PageRequest.of(0, 20)));
+        queries.put("BooksRepository.findBeforeYearAndId",
+                () -> booksRepository.findBeforeYearAndId(sample.year, sample.bookId, PageRequest.of(0, 20)));
+        queries.put("BooksRepository.findAfterId", () -> booksRepository.findAfterId(sample.bookId, PageRequest.of(0, 20)));
+        queries.put("BooksRepository.findBeforeId", () -> booksRepository.findBeforeId(sample.bookId, PageRequest.of(0, 20)));
+        queries.put("BooksRepository.streamSuggestionsByIdBetween",
+                () -> first(() -> booksRepository.streamSuggestionsByIdBetween(sample.bookId, sample.bookId + 1000)));
+        queries.put("BooksRepository.findOverdue", () -> booksRepository.findOverdue(new Date(), PageRequest.of(0, 20)));
+        queries.put("BooksRepository.findIdsByPersonId", () -> booksRepository.findIdsByPersonId(sample.personId));
+        queries.put("BooksRepository.streamLoans", () -> first(booksRepository::streamLoans));
+        queries.put("PeopleRepository.findByNameStartingWithOrderByName", () -> peopleRepository
+                .findByNameStartingWithOrderByName(sample.personName.substring(0, Math.min(3, sample.personName.length())), PageRequest.of(0, 50)));
+        queries.put("PeopleRepository.findWithBooksById", () -> peopleRepository.findWithBooksById(sample.personId));
+        queries.put("PeopleRepository.findPersonByName", () -> peopleRepository.findPersonByName(sample.personName));
+        queries.put("PeopleRepository.existsByName", () -> peopleRepository.existsByName(sample.personName));
+
+        fullReads.put("BooksRepository.streamSuggestions", () -> first(booksRepository::streamSuggestions));
+        fullReads.put("BooksRepository.streamAll", () -> first(booksRepository::streamAll));
+        fullReads.put("PeopleRepository.findAllBy", peopleRepository::findAllBy);
+        fullReads.put("PeopleRepository.findAllNames", peopleRepository::findAllNames);
+        fullReads.put("PeopleRepository.streamAll", () -> first(peopleRepository::streamAll));
+
+        Set<String> declared = declaredQueries();
+        Set<String> missing = new TreeSet<>(declared);
+        missing.removeAll(queries.keySet());
+        missing.removeAll(fullReads.keySet());
+        Set<String> unknown = new TreeSet<>(queries.keySet());
+        unknown.addAll(fullReads.keySet());
+        unknown.removeAll(declared);
+        if (!missing.isEmpty() || !unknown.isEmpty())
+            throw new IllegalStateException("Список запросов QueryPlanCheck не совпадает с репозиториями: " +
+                    "нет примера вызова для " + missing + ", нет метода для " + unknown);
+
+        for (Runnable fullRead : fullReads.values()) capture(fullRead);
+
+        List<String> violations = new ArrayList<>();
+        for (Map.Entry<String, Runnable> query : queries.entrySet()) {
+            List<CapturedStatement> statements = capture(query.getValue());
+
+            for (CapturedStatement statement : statements) {
+                JsonNode plan = explain(statement);
+                List<String> scans = new ArrayList<>();
+                findSequentialScans(plan.path(0).path("Plan"), false, scans);
+
+                if (!scans.isEmpty())
+                    violations.add(query.getKey() + ": " + String.join(", ", scans) + "\n  " + statement.sql);
+            }
+        }
+
+        if (!violations.isEmpty())
+            throw new IllegalStateException("Запросы читают таблицы последовательным сканированием " +
+                    "(нет подходящего индекса, см. db/migration):\n" + String.join("\n", violations));
+
+        log.info("Планы {} запросов репозиториев используют индексы, {} запросов читают таблицу целиком",
+                queries.size(), fullReads.size());
+    }
+
+    // собственные методы интерфейсов репозиториев, без унаследованных от JpaRepository
+    private static Set<String> declaredQueries() {
+        Set<String> methods = new TreeSet<>();
+        for (Class<?> repository : REPOSITORIES)
+            for (Method method : repository.getDeclaredMethods())
+                if (!method.isDefault() && !method.isSynthetic() && !Modifier.isStatic(method.getModifiers()))
+                    methods.add(repository.getSimpleName() + "." + method.getName());
+
+        return methods;
+    }
+
+    // запрос потока выполняется при его открытии, достаточно прочитать первую строку
+    private static void first(Supplier<? extends Stream<?>> query) {
+        try (Stream<?> stream = query.get()) {
+            stream.findFirst();
+        }
+    }
+
+    // параметры запросов из существующих строк: выданная книга, ее держатель и начало названия
+    private Sample sample() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("select reltuples from pg_class where relname = 'book'")) {
+                long rows = resultSet.next() ? resultSet.getLong(1) : 0;
+                // на маленькой таблице последовательное сканирование дешевле индекса, и проверка бессмысленна
+                if (rows < minRows)
+                    throw new IllegalStateException("Для проверки планов в book нужно не меньше " + minRows +
+                            " строк по статистике (сейчас " + rows + "), заполните базу и выполните ANALYZE");
+            }
+
+            try (ResultSet resultSet = statement.executeQuery("select b.id, b.year, b.title, p.id, p.name " +
+                    "from book b join person p on p.id = b.person_id limit 1")) {
+                if (!resultSet.next()) throw new IllegalStateException("Для проверки планов нужна хотя бы одна выданная книга");
+
+                return new Sample(resultSet.getInt(1), resultSet.getInt(2),
+                        resultSet.getString(3).substring(0, Math.min(3, resultSet.getString(3).length())),
+                        resultSet.getInt(4), resultSet.getString(5));
+            }
+        }
+    }
+
+    private List<CapturedStatement> capture(Runnable query) {
+        List<CapturedStatement> statements = new ArrayList<>();
+
+        captured.set(statements);
+        try {
+            transactionTemplate.executeWithoutResult(status -> query.run());
+        } finally {
+            captured.remove();
+        }
+
+        return statements;
+    }
+
+    // план с теми же значениями параметров, что и у выполненного запроса
+    private JsonNode explain(CapturedStatement captured) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("explain (format json) " + captured.sql)) {
+            for (Object[] parameter : captured.parameters)
+                ((Method) parameter[0]).invoke(statement, (Object[]) parameter[1]);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return objectMapper.readTree(resultSet.getString(1));
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("EXPLAIN не выполнен: " + captured.sql, e);
+        }
+    }
+
+    private static void findSequentialScans(JsonNode node, boolean sorted, List<String> scans) {
+        String type = node.path("Node Type").asText();
+        String relation = node.path("Relation Name").asText();
+
+        if (type.equals("Seq Scan") && CHECKED_TABLES.contains(relation) && (node.has("Filter") || sorted))
+            scans.add("Seq Scan on " + relation + (node.has("Filter") ? " (" + node.path("Filter").asText() + ")" : " + Sort"));
+
+        boolean sortedBelow = sorted || type.equals("Sort") || type.equals("Incremental Sort");
+        for (JsonNode child : node.path("Plans")) findSequentialScans(child, sortedBelow, scans);
+    }
+
+    private static Connection capturingConnection(Connection connection) {
+        return proxy(Connection.class, connection, (target, method, args) -> {
+            Object result = method.invoke(target, args);
+
+            if (method.getName().equals("prepareStatement") && captured.get() != null)
+                return capturingStatement((PreparedStatement) result, (String) args[0], captured.get());
+
+            return result;
+        });
+    }
+
+    // запоминаем SQL и вызовы setXxx(индекс, значение, ...) для повторения их на запросе EXPLAIN
+    private static PreparedStatement capturingStatement(PreparedStatement statement, String sql,
+                                                        List<CapturedStatement> statements) {
+        CapturedStatement capturedStatement = new CapturedStatement(sql);
+
+        return proxy(PreparedStatement.class, statement, (target, method, args) -> {
+            if (method.getName().startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer)
+                capturedStatement.parameters.add(new Object[]{method, args});
+            if (method.getName().startsWith("execute") && sql.trim().toLowerCase(Locale.ROOT).startsWith("select"))
+                statements.add(capturedStatement);
+
+            return method.invoke(target, args);
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, T target, Handler<T> handler) {
+        InvocationHandler invocationHandler = (proxy, method, args) -> {
+            try {
+                return handler.invoke(target, method, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+
+        return type.cast(Proxy.newProxyInstance(QueryPlanCheck.class.getClassLoader(), new Class<?>[]{type}, invocationHandler));
+    }
+
+    private interface Handler<T> {
+        Object invoke(T target, Method method, Object[] args) throws Throwable;
+    }
+
+    private static class CapturedStatement {
+        private final String sql;
+        // пары (метод setXxx, его аргументы)
+        private final List<Object[]> parameters = new ArrayList<>();
+
+        private CapturedStatement(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private static class Sample {
+        private final int bookId;
+        private final int year;
+        private final String titlePrefix;
+        private final int personId;
+        private final String personName;
+
+        private Sample(int bookId, int year, String titlePrefix, int personId, String personName) {
+            this.bookId = bookId;
+            this.year = year;
+            this.titlePrefix = titlePrefix;
+            this.personId = personId;
+            this.personName = personName;
+        }
+    }
+}
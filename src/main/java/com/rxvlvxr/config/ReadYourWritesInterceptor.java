@@ -0,0 +1,101 @@
+package com.rxvlvxr.config;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// read-your-writes при чтении с реплик: после записи клиент windowMillis мс читает из основной базы данных
+// момент окончания окна хранится в cookie, поэтому не нужна HTTP-сессия и работает на любом узле приложения
+// (включая GET после redirect, которым заканчивается каждая форма)
+public class ReadYourWritesInterceptor implements HandlerInterceptor {
+    static final String COOKIE = "primary_until";
+
+    // состояние текущего запроса; вне запросов (старт приложения, CLI) его нет и чтение идет как обычно
+    private static final ThreadLocal<State> STATE = new ThreadLocal<>();
+
+    private final long windowMillis;
+
+    public ReadYourWritesInterceptor(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    // основная база данных, соединение из которой для пишущей транзакции отмечает запрос как записавший
+    public static DataSource trackingWrites(DataSource primary) {
+        return new DelegatingDataSource(primary) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                markWrite();
+                return super.getConnection();
+            }
+        };
+    }
+
+    static boolean isPinnedToPrimary() {
+        State state = STATE.get();
+        return state != null && state.pinned;
+    }
+
+    private static void markWrite() {
+        State state = STATE.get();
+        if (state == null || state.wrote) return;
+
+        state.wrote = true;
+        state.pinned = true;
+
+        // cookie ставится сразу: после записи контроллер может сам начать писать ответ
+        long until = System.currentTimeMillis() + state.windowMillis;
+        Cookie cookie = new Cookie(COOKIE, String.valueOf(until));
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge((int) Math.max(1, (state.windowMillis + 999) / 1000));
+        state.response.addCookie(cookie);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        State state = new State(response, windowMillis);
+        state.pinned = pinnedUntil(request) > System.currentTimeMillis();
+        STATE.set(state);
+
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        STATE.remove();
+    }
+
+    private static long pinnedUntil(HttpServletRequest request) {
+        if (request.getCookies() == null) return 0;
+
+        for (Cookie cookie : request.getCookies()) {
+            if (!COOKIE.equals(cookie.getName())) continue;
+
+            try {
+                return Long.parseLong(cookie.getValue());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        return 0;
+    }
+
+    private static final class State {
+        private final HttpServletResponse response;
+        private final long windowMillis;
+        private boolean pinned;
+        private boolean wrote;
+
+        private State(HttpServletResponse response, long windowMillis) {
+            this.response = response;
+            this.windowMillis = windowMillis;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.rxvlvxr.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// соединения для read-only транзакций: реплики по кругу, недоступная реплика пропускается retryMillis мс,
+// если недоступны все реплики (или их нет), соединение берется из основной базы данных
+// после записи (см. ReadYourWritesInterceptor) чтение этого клиента идет в основную базу, чтобы не видеть отставание реплики
+// после любого изменения каталога запоминается позиция WAL основной базы (catalogChanged), и реплика получает чтения
+// только когда проиграла WAL до этой позиции: страницы под новым ETag и фрагменты нового поколения BookIndexCache
+// не должны собираться из строк реплики, которая еще не догнала запись
+public class ReplicaDataSource extends AbstractDataSource implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaDataSource.class);
+
+    private static final String PRIMARY_LSN = "select pg_current_wal_lsn() - '0/0'";
+    // на сервере не в режиме восстановления (реплика была повышена) функция возвращает null, отставания нет
+    private static final String REPLAY_LSN = "select pg_last_wal_replay_lsn() - '0/0'";
+
+    private final DataSource primary;
+    private final List<? extends DataSource> replicas;
+    private final long retryMillis;
+    private final AtomicInteger next = new AtomicInteger();
+    // до какого момента (мс) реплика считается недоступной
+    private final AtomicLongArray downUntil;
+    // позиция WAL основной базы после последнего изменения каталога и позиции, до которых точно дошли реплики
+    private final AtomicLong catalogLsn = new AtomicLong();
+    private final AtomicLongArray replayedLsn;
+
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+    private final Counter failures;
+    private final Counter lagging;
+
+    public ReplicaDataSource(DataSource primary, List<? extends DataSource> replicas, long retryMillis,
+                             MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.retryMillis = retryMillis;
+        this.downUntil = new AtomicLongArray(replicas.size());
+        this.replayedLsn = new AtomicLongArray(replicas.size());
+
+        this.replicaReads = Counter.builder("datasource.read_connections").tag("target", "replica")
+                .description("Соединения для read-only транзакций").register(meterRegistry);
+        this.primaryReads = Counter.builder("datasource.read_connections").tag("target", "primary")
+                .description("Соединения для read-only транзакций").register(meterRegistry);
+        this.failures = Counter.builder("datasource.replica.failures")
+                .description("Неудачные попытки получить соединение с репликой").register(meterRegistry);
+        this.lagging = Counter.builder("datasource.replica.lagging")
+                .description("Соединения с репликой, которая еще не проиграла последнее изменение каталога")
+                .register(meterRegistry);
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    // вызывается после коммита изменения каталога (CatalogVersion) до смены версии:
+    // позиция WAL после коммита не меньше позиции самого коммита
+    public void catalogChanged() {
+        try (Connection connection = primary.getConnection()) {
+            long lsn = lsn(connection, PRIMARY_LSN);
+            catalogLsn.accumulateAndGet(lsn, Math::max);
+        } catch (SQLException e) {
+            log.warn("Не удалось получить позицию WAL основной базы данных: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!ReadYourWritesInterceptor.isPinnedToPrimary()) {
+            int start = Math.floorMod(next.getAndIncrement(), Math.max(replicas.size(), 1));
+
+            for (int i = 0; i < replicas.size(); i++) {
+                int index = (start + i) % replicas.size();
+                if (downUntil.get(index) > System.currentTimeMillis()) continue;
+
+                Connection connection;
+                try {
+                    connection = replicas.get(index).getConnection();
+                } catch (SQLException e) {
+                    failures.increment();
+                    downUntil.set(index, System.currentTimeMillis() + retryMillis);
+                    log.warn("Реплика {} недоступна, следующая попытка через {} мс: {}", index, retryMillis, e.getMessage());
+                    continue;
+                }
+
+                if (caughtUp(index, connection)) {
+                    replicaReads.increment();
+                    return connection;
+                }
+                lagging.increment();
+                connection.close();
+            }
+        }
+
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    // позиция реплики запрашивается только пока она не дошла до последнего изменения каталога,
+    // без записей чтение с реплики не стоит лишнего запроса
+    private boolean caughtUp(int index, Connection connection) {
+        long required = catalogLsn.get();
+        if (replayedLsn.get(index) >= required) return true;
+
+        try {
+            long replayed = lsn(connection, REPLAY_LSN);
+            replayedLsn.accumulateAndGet(index, replayed, Math::max);
+            return replayed >= required;
+        } catch (SQLException e) {
+            log.warn("Не удалось получить позицию WAL реплики {}: {}", index, e.getMessage());
+            return false;
+        }
+    }
+
+    private static long lsn(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            long lsn = resultSet.getLong(1);
+            return resultSet.wasNull() ? Long.MAX_VALUE : lsn;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    // пулы реплик принадлежат этому объекту, основной пул закрывается отдельно
+    @Override
+    public void close() throws IOException {
+        for (DataSource replica : replicas)
+            if (replica instanceof Closeable closeable) closeable.close();
+    }
+}
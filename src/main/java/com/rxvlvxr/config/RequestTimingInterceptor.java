@@ -0,0 +1,44 @@
+package com.rxvlvxr.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+// время обработки запроса для каждого эндпоинта (шаблон пути из @GetMapping/@PostMapping, а не конкретный URL,
+// чтобы /books/1 и /books/2 попадали в одну гистограмму)
+public class RequestTimingInterceptor implements HandlerInterceptor {
+    private static final String SAMPLE_ATTRIBUTE = RequestTimingInterceptor.class.getName() + ".sample";
+
+    private final MeterRegistry meterRegistry;
+
+    public RequestTimingInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(SAMPLE_ATTRIBUTE, Timer.start(meterRegistry));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(request.getAttribute(SAMPLE_ATTRIBUTE) instanceof Timer.Sample sample)) return;
+
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+        sample.stop(Timer.builder("http.server.requests")
+                .tag("method", request.getMethod())
+                .tag("uri", pattern != null ? pattern.toString() : "UNKNOWN")
+                .tag("handler", handler instanceof HandlerMethod method
+                        ? method.getBeanType().getSimpleName() + "." + method.getMethod().getName()
+                        : "none")
+                .tag("status", Integer.toString(response.getStatus()))
+                .tag("exception", ex != null ? ex.getClass().getSimpleName() : "none")
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,44 @@
+package com.rxvlvxr.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.autoproxy.AbstractBeanFactoryAwareAdvisingPostProcessor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Service;
+
+// время выполнения публичных методов сервисов (@Service)
+// совет добавляется к уже созданному транзакционному прокси перед остальными, поэтому в замер входит и транзакция
+@Component
+public class ServiceTimingPostProcessor extends AbstractBeanFactoryAwareAdvisingPostProcessor {
+
+    // реестр метрик берется лениво, чтобы не создавать бины конфигурации раньше остальных BeanPostProcessor
+    @Autowired
+    public ServiceTimingPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        MethodInterceptor interceptor = invocation -> {
+            Timer.Sample sample = Timer.start(meterRegistry.getObject());
+            String exception = "none";
+
+            try {
+                return invocation.proceed();
+            } catch (Throwable e) {
+                exception = e.getClass().getSimpleName();
+                throw e;
+            } finally {
+                sample.stop(Timer.builder("service.method")
+                        .tag("class", invocation.getMethod().getDeclaringClass().getSimpleName())
+                        .tag("method", invocation.getMethod().getName())
+                        .tag("exception", exception)
+                        .register(meterRegistry.getObject()));
+            }
+        };
+
+        this.advisor = new DefaultPointcutAdvisor(new AnnotationMatchingPointcut(Service.class, true), interceptor);
+        setBeforeExistingAdvisors(true);
+        setProxyTargetClass(true);
+    }
+}
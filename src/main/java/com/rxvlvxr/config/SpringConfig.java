@@ -1,20 +1,35 @@
 package com.rxvlvxr.config;
 
+import com.rxvlvxr.services.CatalogVersion;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.flywaydb.core.Flyway;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.env.Environment;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.validation.Validator;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ViewResolverRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.thymeleaf.spring6.SpringTemplateEngine;
@@ -22,7 +37,11 @@ import org.thymeleaf.spring6.templateresolver.SpringResourceTemplateResolver;
 import org.thymeleaf.spring6.view.ThymeleafViewResolver;
 
 import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 
 @Configuration
@@ -33,15 +52,20 @@ import java.util.Properties;
 @EnableTransactionManagement
 @EnableWebMvc
 public class SpringConfig implements WebMvcConfigurer {
+    // таймеры, для которых публикуется гистограмма (бакеты Prometheus) и перцентили
+    private static final Set<String> HISTOGRAM_TIMERS =
+            Set.of("hikaricp.connections.acquire", "http.server.requests", "service.method");
 
     private final ApplicationContext applicationContext;
     private final Environment environment;
+    private final CatalogVersion catalogVersion;
 
     // внедряем зависимости
     @Autowired
-    public SpringConfig(ApplicationContext applicationContext, Environment environment) {
+    public SpringConfig(ApplicationContext applicationContext, Environment environment, CatalogVersion catalogVersion) {
         this.applicationContext = applicationContext;
         this.environment = environment;
+        this.catalogVersion = catalogVersion;
     }
 
     @Bean
@@ -74,17 +98,151 @@ public class SpringConfig implements WebMvcConfigurer {
     }
 
 
-    // указываем данные для подключения к базе данных PostgreSQL
+    // валидатор Bean Validation, общий для контроллеров и массового импорта книг
+    @Bean
+    public LocalValidatorFactoryBean validator() {
+        return new LocalValidatorFactoryBean();
+    }
+
+    @Override
+    public Validator getValidator() {
+        return validator();
+    }
+
+    // реестр метрик в формате Prometheus: пул соединений, эндпоинты, сервисы, Hibernate и JVM
     @Bean
+    public PrometheusMeterRegistry meterRegistry() {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        registry.config().commonTags("application", "project2");
+        // для времени получения соединения из пула и времени ответа включаем гистограмму и перцентили
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!HISTOGRAM_TIMERS.contains(id.getName())) return config;
+
+                return DistributionStatisticConfig.builder()
+                        .percentilesHistogram(true)
+                        .percentiles(0.5, 0.95, 0.99)
+                        .minimumExpectedValue((double) Duration.ofMillis(1).toNanos())
+                        .maximumExpectedValue((double) Duration.ofSeconds(10).toNanos())
+                        .build()
+                        .merge(config);
+            }
+        });
+
+        return registry;
+    }
+
+    // время ответа каждого эндпоинта, чтение из основной базы после записи (если есть реплики)
+    // и ответ 304 Not Modified для страниц каталога, если данные не менялись с прошлого запроса клиента
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RequestTimingInterceptor(meterRegistry()));
+        if (replicaDataSource().hasReplicas())
+            registry.addInterceptor(new ReadYourWritesInterceptor(
+                    environment.getProperty("hibernate.replica.read_your_writes_ms", Long.class, 5000L)));
+        registry.addInterceptor(new ConditionalGetInterceptor(catalogVersion, Duration.ZERO))
+                .addPathPatterns("/books", "/books/{id}", "/people", "/api/books", "/api/people")
+                // отчет о просрочке зависит от текущего времени
+                .excludePathPatterns("/books/overdue");
+        // на странице человека и в /api/loans есть признак просрочки, поэтому версия меняется еще и раз в минуту
+        registry.addInterceptor(new ConditionalGetInterceptor(catalogVersion, Duration.ofMinutes(1)))
+                .addPathPatterns("/people/{id}", "/api/loans");
+    }
+
+    // указываем данные для подключения к базе данных PostgreSQL
+    // вместо DriverManagerDataSource используем пул HikariCP, чтобы не открывать физическое соединение на каждую транзакцию
+    // основная база данных (в нее идут все пишущие транзакции и COPY массового импорта)
+    @Bean(destroyMethod = "close")
+    @Primary
     public DataSource dataSource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
+        return pool("project2", environment.getRequiredProperty("hibernate.connection.url"), true);
+    }
+
+    // реплики для read-only транзакций, список URL через запятую в hibernate.replica.urls (пустой - реплик нет)
+    @Bean(destroyMethod = "close")
+    public ReplicaDataSource replicaDataSource() {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        String[] urls = environment.getProperty("hibernate.replica.urls", String[].class, new String[0]);
+        for (String url : urls)
+            if (!url.isBlank()) replicas.add(pool("project2-replica-" + (replicas.size() + 1), url.trim(), false));
+
+        ReplicaDataSource replicaDataSource = new ReplicaDataSource(dataSource(), replicas,
+                environment.getProperty("hibernate.replica.retry_ms", Long.class, 30000L), meterRegistry());
+        if (replicaDataSource.hasReplicas()) catalogVersion.onChange(replicaDataSource::catalogChanged);
+        return replicaDataSource;
+    }
+
+    // соединения для Hibernate: транзакции с readOnly = true (по умолчанию у всех сервисов) читают с реплик,
+    // остальные пишут в основную базу; LazyConnectionDataSourceProxy берет физическое соединение только
+    // при первом запросе, когда уже известно, помечена ли транзакция как read-only
+    private DataSource routingDataSource() {
+        if (!replicaDataSource().hasReplicas()) return dataSource();
+
+        LazyConnectionDataSourceProxy routing =
+                new LazyConnectionDataSourceProxy(ReadYourWritesInterceptor.trackingWrites(dataSource()));
+        routing.setReadOnlyDataSource(replicaDataSource());
+
+        return routing;
+    }
+
+    private HikariDataSource pool(String name, String url, boolean required) {
+        HikariConfig config = new HikariConfig();
+
+        config.setPoolName(name);
+        config.setDriverClassName(environment.getRequiredProperty("hibernate.driver_class"));
+        config.setJdbcUrl(url);
+        config.setUsername(environment.getRequiredProperty("hibernate.connection.username"));
+        config.setPassword(environment.getRequiredProperty("hibernate.connection.password"));
+
+        // размер пула и таймауты
+        config.setMinimumIdle(environment.getProperty("hibernate.hikari.minimumIdle", Integer.class, 5));
+        // в режиме виртуальных потоков число одновременных запросов ограничивает уже не пул потоков контейнера,
+        // а пул соединений, поэтому для него задается отдельный размер (по возможностям PostgreSQL, а не числу потоков)
+        boolean virtualThreads = environment.getProperty("server.virtual_threads", Boolean.class, false);
+        config.setMaximumPoolSize(virtualThreads
+                ? environment.getProperty("hibernate.hikari.virtual.maximumPoolSize", Integer.class, 50)
+                : environment.getProperty("hibernate.hikari.maximumPoolSize", Integer.class, 20));
+        config.setConnectionTimeout(environment.getProperty("hibernate.hikari.connectionTimeout", Long.class, 3000L));
+        config.setIdleTimeout(environment.getProperty("hibernate.hikari.idleTimeout", Long.class, 600000L));
+        config.setMaxLifetime(environment.getProperty("hibernate.hikari.maxLifetime", Long.class, 1800000L));
+        config.setKeepaliveTime(environment.getProperty("hibernate.hikari.keepaliveTime", Long.class, 120000L));
+        // проверка соединения перед выдачей (Connection.isValid) и поиск утечек
+        config.setValidationTimeout(environment.getProperty("hibernate.hikari.validationTimeout", Long.class, 1000L));
+        config.setLeakDetectionThreshold(environment.getProperty("hibernate.hikari.leakDetectionThreshold", Long.class, 0L));
+
+        // кэширование серверных prepared statements в pgjdbc
+        config.addDataSourceProperty("prepareThreshold",
+                environment.getProperty("hibernate.hikari.dataSource.prepareThreshold", "5"));
+        config.addDataSourceProperty("preparedStatementCacheQueries",
+                environment.getProperty("hibernate.hikari.dataSource.preparedStatementCacheQueries", "256"));
+        config.addDataSourceProperty("preparedStatementCacheSizeMiB",
+                environment.getProperty("hibernate.hikari.dataSource.preparedStatementCacheSizeMiB", "5"));
+
+        // метрики пула: active, idle, pending и гистограмма времени получения соединения
+        config.setMetricRegistry(meterRegistry());
+        config.setRegisterMbeans(true);
+        // реплика может быть недоступна при старте, тогда чтение идет из основной базы
+        if (!required) config.setInitializationFailTimeout(-1);
+
+        return new HikariDataSource(config);
+    }
+
+    // версионные миграции схемы из src/main/resources/db/migration, выполняются в основной базе до создания
+    // EntityManagerFactory; база, созданная раньше скриптом из README, получает историю миграций с версии 0,
+    // а V1 пропускает уже существующие таблицы и столбцы
+    @Bean
+    public Flyway flyway() {
+        Flyway flyway = Flyway.configure()
+                .dataSource(dataSource())
+                .locations("classpath:db/migration")
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load();
 
-        dataSource.setDriverClassName(environment.getRequiredProperty("hibernate.driver_class"));
-        dataSource.setUrl(environment.getRequiredProperty("hibernate.connection.url"));
-        dataSource.setUsername(environment.getRequiredProperty("hibernate.connection.username"));
-        dataSource.setPassword(environment.getRequiredProperty("hibernate.connection.password"));
+        if (environment.getProperty("schema.migrate_on_startup", Boolean.class, true)) flyway.migrate();
 
-        return dataSource;
+        return flyway;
     }
 
     // добавляем properties для Hibernate
@@ -92,14 +250,39 @@ public class SpringConfig implements WebMvcConfigurer {
         Properties properties = new Properties();
         properties.put("hibernate.dialect", environment.getRequiredProperty("hibernate.dialect"));
         properties.put("hibernate.show_sql", environment.getRequiredProperty("hibernate.show_sql"));
+        // кэш второго уровня для сущностей, коллекций и запросов
+        properties.put("hibernate.cache.use_second_level_cache",
+                environment.getRequiredProperty("hibernate.cache.use_second_level_cache"));
+        properties.put("hibernate.cache.use_query_cache", environment.getRequiredProperty("hibernate.cache.use_query_cache"));
+        properties.put("hibernate.cache.region.factory_class", "jcache");
+        properties.put("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+        properties.put("hibernate.javax.cache.uri", environment.getRequiredProperty("hibernate.javax.cache.uri"));
+        properties.put("hibernate.generate_statistics", environment.getRequiredProperty("hibernate.generate_statistics"));
+        properties.put("hibernate.session.events.log", environment.getRequiredProperty("hibernate.session.events.log"));
+        // при смене Book.person кэш коллекции Person.books прежнего и нового держателя сбрасывается сам,
+        // поэтому выдача и возврат не загружают и не правят список книг человека
+        properties.put("hibernate.cache.auto_evict_collection_cache", "true");
+        // кэшируются только сущности, помеченные @Cacheable
+        properties.put("jakarta.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        // полнотекстовый индекс книг
+        properties.put("hibernate.search.backend.analysis.configurer", BookSearchAnalysisConfigurer.class.getName());
+        properties.put("hibernate.search.backend.directory.type",
+                environment.getRequiredProperty("hibernate.search.backend.directory.type"));
+        properties.put("hibernate.search.backend.directory.root",
+                environment.getRequiredProperty("hibernate.search.backend.directory.root"));
+        properties.put("hibernate.search.indexing.plan.synchronization.strategy",
+                environment.getRequiredProperty("hibernate.search.indexing.plan.synchronization.strategy"));
 
         return properties;
     }
 
     @Bean
+    @DependsOn("flyway")
     public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
         final LocalContainerEntityManagerFactoryBean em = new LocalContainerEntityManagerFactoryBean();
-        em.setDataSource(dataSource());
+        // для проверки планов запросов при старте SQL и параметры запросов Hibernate перехватываются
+        em.setDataSource(new PoolDataSourceAdapter(environment.getProperty("schema.plan_check", Boolean.class, false)
+                ? QueryPlanCheck.capturing(routingDataSource()) : routingDataSource()));
         em.setPackagesToScan("com.rxvlvxr.models");
 
         final HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
@@ -0,0 +1,100 @@
+package com.rxvlvxr.controllers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.rxvlvxr.services.ApiResource;
+import com.rxvlvxr.services.ApiService;
+import com.rxvlvxr.services.BooksService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// JSON API для машинных клиентов
+// fields=a,b - только нужные поля (в запрос к базе попадают только они), after=<next> - следующая страница,
+// ids=1,2,3 - несколько записей одним запросом
+@Controller
+@RequestMapping("/api")
+public class ApiController {
+    // сколько id можно запросить за раз
+    private static final int MAX_IDS = 100;
+
+    private final ApiService apiService;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Autowired
+    public ApiController(ApiService apiService) {
+        this.apiService = apiService;
+    }
+
+    @GetMapping("/books")
+    public void books(@RequestParam(name = "fields", required = false) Optional<String> fields,
+                      @RequestParam(name = "after", required = false) Optional<Integer> after,
+                      @RequestParam(name = "limit", required = false) Optional<Integer> limit,
+                      @RequestParam(name = "ids", required = false) Optional<List<Integer>> ids,
+                      HttpServletResponse response) throws IOException {
+        write(ApiResource.BOOKS, fields, after, limit, ids, response);
+    }
+
+    @GetMapping("/people")
+    public void people(@RequestParam(name = "fields", required = false) Optional<String> fields,
+                       @RequestParam(name = "after", required = false) Optional<Integer> after,
+                       @RequestParam(name = "limit", required = false) Optional<Integer> limit,
+                       @RequestParam(name = "ids", required = false) Optional<List<Integer>> ids,
+                       HttpServletResponse response) throws IOException {
+        write(ApiResource.PEOPLE, fields, after, limit, ids, response);
+    }
+
+    @GetMapping("/loans")
+    public void loans(@RequestParam(name = "fields", required = false) Optional<String> fields,
+                      @RequestParam(name = "after", required = false) Optional<Integer> after,
+                      @RequestParam(name = "limit", required = false) Optional<Integer> limit,
+                      @RequestParam(name = "ids", required = false) Optional<List<Integer>> ids,
+                      HttpServletResponse response) throws IOException {
+        write(ApiResource.LOANS, fields, after, limit, ids, response);
+    }
+
+    private void write(ApiResource resource, Optional<String> fields, Optional<Integer> after,
+                       Optional<Integer> limit, Optional<List<Integer>> ids,
+                       HttpServletResponse response) throws IOException {
+        // проверяем параметры до того, как начнем писать ответ
+        List<String> selected = parseFields(resource, fields);
+        if (ids.isPresent() && ids.get().size() > MAX_IDS)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "не больше " + MAX_IDS + " id за запрос");
+
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentType("application/json");
+
+        try (JsonGenerator json = jsonFactory.createGenerator(response.getWriter())) {
+            if (ids.isPresent()) apiService.writeByIds(resource, selected, ids.get(), json);
+            else apiService.writePage(resource, selected, after,
+                    Math.min(Math.max(limit.orElse(BooksService.MAX_BOOKS_PER_PAGE), 1), BooksService.MAX_BOOKS_PER_PAGE),
+                    json);
+        }
+    }
+
+    // без fields возвращаются все поля ресурса, неизвестное поле - ошибка 400
+    private static List<String> parseFields(ApiResource resource, Optional<String> fields) {
+        if (fields.isEmpty() || fields.get().isBlank()) return new ArrayList<>(resource.getFieldNames());
+
+        List<String> selected = new ArrayList<>();
+        for (String field : fields.get().split(",")) {
+            field = field.trim();
+            if (!resource.getFieldNames().contains(field))
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "неизвестное поле: " + field);
+            if (!selected.contains(field)) selected.add(field);
+        }
+
+        return selected;
+    }
+}
@@ -1,17 +1,42 @@
 package com.rxvlvxr.controllers;
 
+import com.rxvlvxr.dto.BookListItem;
+import com.rxvlvxr.dto.BookSearchItem;
+import com.rxvlvxr.dto.BookSuggestion;
+import com.rxvlvxr.dto.ImportReport;
+import com.rxvlvxr.dto.KeysetPage;
+import com.rxvlvxr.dto.LoanResult;
+import com.rxvlvxr.dto.SearchPage;
 import com.rxvlvxr.models.Book;
 import com.rxvlvxr.models.Person;
+import com.rxvlvxr.services.BookImportService;
+import com.rxvlvxr.services.BookIndexCache;
 import com.rxvlvxr.services.BooksService;
 import com.rxvlvxr.services.PeopleService;
+import com.rxvlvxr.util.BookImporter;
 import com.rxvlvxr.util.BookValidator;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.web.servlet.JakartaServletWebApplication;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 @Controller
@@ -21,30 +46,78 @@ public class BookController {
     private final BooksService booksService;
     private final PeopleService peopleService;
     private final BookValidator bookValidator;
+    private final BookImportService bookImportService;
+    private final BookIndexCache bookIndexCache;
+    private final SpringTemplateEngine templateEngine;
 
-    // внедрение зависимостей
+    // внедрение зависимостей (вместо сервиса импорта внедряется прокси, сам сервис создается при первом импорте)
     @Autowired
-    public BookController(BooksService booksService, PeopleService peopleService, BookValidator bookValidator) {
+    public BookController(BooksService booksService, PeopleService peopleService, BookValidator bookValidator,
+                          @Lazy BookImportService bookImportService, BookIndexCache bookIndexCache,
+                          SpringTemplateEngine templateEngine) {
         this.booksService = booksService;
         this.peopleService = peopleService;
         this.bookValidator = bookValidator;
+        this.bookImportService = bookImportService;
+        this.bookIndexCache = bookIndexCache;
+        this.templateEngine = templateEngine;
     }
 
     // GET запрос, который возвращает страницу index.html со всеми данными из таблицы book
+    // список книг рендерится отдельно (шаблон books/list) и кэшируется по параметрам запроса,
+    // повторный запрос с теми же параметрами не обращается к базе данных и не рендерит список заново
     @GetMapping
-    public String index(Model model,
+    public String index(Model model, HttpServletRequest request, HttpServletResponse response,
                         // указываем что ждем необязательный параметр в запросе page
                         // с помощью него можно указать страницу
                         @RequestParam(name = "page", required = false) Optional<Integer> page,
                         // параметр для отображения фиксированного количества строк из таблицы
                         @RequestParam(name = "books_per_page", required = false) Optional<Integer> booksPerPage,
                         // параметр для сортировки
-                        @RequestParam(name = "sort_by_year", required = false, defaultValue = "true") boolean sortByYear) {
-        model.addAttribute("books", booksService.findAll(page, booksPerPage, sortByYear));
+                        @RequestParam(name = "sort_by_year", required = false, defaultValue = "true") boolean sortByYear,
+                        // курсоры для keyset-пагинации: используются, если не указан номер страницы
+                        @RequestParam(name = "after", required = false) Optional<String> after,
+                        @RequestParam(name = "before", required = false) Optional<String> before) {
+        String key = BookIndexCache.key(page.orElse(null), booksPerPage.orElse(null), sortByYear,
+                after.orElse(null), before.orElse(null));
+        long generation = bookIndexCache.getGeneration();
+        String booksHtml = bookIndexCache.get(key);
+
+        if (booksHtml == null) {
+            WebContext context = new WebContext(JakartaServletWebApplication.buildApplication(request.getServletContext())
+                    .buildExchange(request, response));
+
+            if (page.isPresent())
+                context.setVariable("books", booksService.findAll(page, booksPerPage, sortByYear));
+            else {
+                KeysetPage<BookListItem> books = booksService.findPage(after, before, booksPerPage, sortByYear);
+
+                context.setVariable("books", books.getContent());
+                context.setVariable("nextCursor", books.getNextCursor());
+                context.setVariable("prevCursor", books.getPrevCursor());
+            }
+            context.setVariable("booksPerPage", booksPerPage.orElse(null));
+            context.setVariable("sortByYear", sortByYear);
+
+            booksHtml = templateEngine.process("books/list", context);
+            bookIndexCache.put(key, generation, booksHtml);
+        }
+
+        model.addAttribute("booksHtml", booksHtml);
 
         return "books/index";
     }
 
+    // отчет о всех просроченных книгах библиотеки с постраничным выводом
+    @GetMapping("/overdue")
+    public String overdue(Model model,
+                          @RequestParam(name = "page", required = false) Optional<Integer> page,
+                          @RequestParam(name = "books_per_page", required = false) Optional<Integer> booksPerPage) {
+        model.addAttribute("overdue", booksService.findOverdue(page, booksPerPage));
+
+        return "books/overdue";
+    }
+
     // POST запрос, который при успешной валидации сохраняет объект типа Book в таблицу
     @PostMapping
     public String create(@ModelAttribute("book") @Valid Book book, BindingResult bindingResult) {
@@ -63,6 +136,35 @@ public class BookController {
         return view;
     }
 
+    // массовый импорт книг: тело запроса в формате CSV (title,author,year) или NDJSON читается потоком
+    @PostMapping(value = "/import", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ImportReport importBooks(HttpServletRequest request,
+                                    @RequestParam(name = "format", required = false) String format) throws IOException {
+        BookImporter.Format importFormat;
+        try {
+            importFormat = format != null
+                    ? BookImporter.Format.valueOf(format.toUpperCase(Locale.ROOT))
+                    : request.getContentType() != null && request.getContentType().contains("json")
+                    ? BookImporter.Format.NDJSON : BookImporter.Format.CSV;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "неизвестный формат: " + format + " (csv или ndjson)");
+        }
+
+        try (Reader reader = new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8)) {
+            return bookImportService.importBooks(reader, importFormat);
+        }
+    }
+
+    // обновление индексов и кэшей этого экземпляра для книг, загруженных в обход приложения (BookImportCli)
+    @PostMapping("/import/refresh")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void refreshImported(@RequestParam("from") int fromId, @RequestParam("to") int toId) {
+        if (fromId > toId) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from больше to");
+
+        bookImportService.refresh(fromId, toId);
+    }
+
     // возвращает страницу для добавления книги
     @GetMapping("/new")
     public String newBook(@ModelAttribute("book") Book book) {
@@ -78,14 +180,24 @@ public class BookController {
     }
 
     // возвращает страницу книги по id
+    // для свободной книги держатель выбирается по началу имени (person_name): показываются первые
+    // PeopleService.PICKER_LIMIT совпадений, без person_name список людей не загружается
     @GetMapping("/{id}")
-    public String show(@PathVariable("id") int id, Model model, @ModelAttribute("anotherPerson") Person anotherPerson) {
-        booksService.findById(id).ifPresent(book -> model.addAttribute("book", book));
+    public String show(@PathVariable("id") int id, Model model, @ModelAttribute("anotherPerson") Person anotherPerson,
+                       @RequestParam(name = "person_name", required = false) String personName) {
+        // книга загружается вместе с держателем одним запросом
+        Optional<Book> optionalBook = booksService.findWithPersonById(id);
+
+        optionalBook.ifPresent(book -> model.addAttribute("book", book));
         // в случае если книга находится у человека, то вернется держатель книги
-        // если нет, то будет возвращен список всех доступных людей для назначения книги
-        booksService.findPersonByBookId(id).ifPresentOrElse(
+        // если нет, то будут возвращены люди, подходящие под начало имени
+        optionalBook.map(Book::getPerson).ifPresentOrElse(
                 person -> model.addAttribute("person", person),
-                () -> model.addAttribute("people", peopleService.findAll()));
+                () -> {
+                    model.addAttribute("people", peopleService.findForPicker(personName));
+                    model.addAttribute("personName", personName);
+                    model.addAttribute("pickerLimit", PeopleService.PICKER_LIMIT);
+                });
 
         return "books/show";
     }
@@ -108,21 +220,32 @@ public class BookController {
     }
 
     // PATCH запрос при котором книге присваивается человек
+    // если книгу уже выдали или она изменилась параллельно, страница книги показывается снова с сообщением и статусом 409
     @PatchMapping("/{id}/assign")
     public String assign(@PathVariable("id") int bookId,
-                         @ModelAttribute("anotherPerson") Person person) {
+                         @ModelAttribute("anotherPerson") Person person, Model model, HttpServletResponse response) {
         int personId = person.getId();
 
-        booksService.assignToPerson(bookId, personId);
+        LoanResult result = booksService.assignToPerson(bookId, personId);
 
-        return "redirect:/books";
+        return result.isOk() ? "redirect:/books" : loanRejected(bookId, result, model, response);
     }
 
     @PatchMapping("/{id}/release")
-    public String release(@PathVariable("id") int id) {
-        booksService.release(id);
+    public String release(@PathVariable("id") int id, Model model, HttpServletResponse response) {
+        LoanResult result = booksService.release(id);
 
-        return "redirect:/books";
+        return result.isOk() ? "redirect:/books" : loanRejected(id, result, model, response);
+    }
+
+    private String loanRejected(int id, LoanResult result, Model model, HttpServletResponse response) {
+        if (result == LoanResult.BOOK_NOT_FOUND) throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+
+        response.setStatus(HttpServletResponse.SC_CONFLICT);
+        model.addAttribute("loanError", result.getMessage());
+        if (!model.containsAttribute("anotherPerson")) model.addAttribute("anotherPerson", new Person());
+
+        return show(id, model, new Person(), null);
     }
 
     @DeleteMapping("/{id}")
@@ -138,6 +261,31 @@ public class BookController {
         return "books/search";
     }
 
+    // автодополнение для поиска: первые limit совпадений по началу слова в названии или авторе в формате JSON
+    @GetMapping(value = "/search/autocomplete", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<BookSuggestion> autocomplete(@RequestParam(name = "q", defaultValue = "") String query,
+                                             @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        return booksService.autocomplete(query, limit);
+    }
+
+    // полнотекстовый поиск по названию и автору с учетом опечаток и постраничным выводом
+    @GetMapping("/search/full")
+    public String fullTextSearch(@RequestParam(name = "q", required = false) String query,
+                                 @RequestParam(name = "page", defaultValue = "0") int page,
+                                 @RequestParam(name = "books_per_page", required = false) Optional<Integer> booksPerPage,
+                                 Model model) {
+        if (query != null) {
+            SearchPage<BookSearchItem> result = booksService.search(query, page, booksPerPage);
+
+            model.addAttribute("books", result.getContent());
+            model.addAttribute("result", result);
+            model.addAttribute("query", query);
+        }
+
+        return "books/search";
+    }
+
     // POST запрос для поиска книги по набору букв, переданному в параметр запроса
     @PostMapping("/search")
     public String searchResults(
@@ -0,0 +1,69 @@
+package com.rxvlvxr.controllers;
+
+import com.rxvlvxr.services.ExportService;
+import com.rxvlvxr.util.RowWriter;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+// выгрузка данных в CSV или NDJSON, ответ пишется в поток по мере чтения строк из базы данных
+// выгрузка нужна редко, поэтому контроллер создается при первом запросе, а не при старте
+@Controller
+@Lazy
+@RequestMapping("/export")
+public class ExportController {
+    private final ExportService exportService;
+
+    @Autowired
+    public ExportController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    @GetMapping("/books")
+    public void books(@RequestParam(name = "format", defaultValue = "csv") String format,
+                      HttpServletResponse response) throws IOException {
+        RowWriter.Format rowFormat = prepare(response, "books", format);
+        exportService.exportBooks(response.getWriter(), rowFormat);
+    }
+
+    @GetMapping("/people")
+    public void people(@RequestParam(name = "format", defaultValue = "csv") String format,
+                       HttpServletResponse response) throws IOException {
+        RowWriter.Format rowFormat = prepare(response, "people", format);
+        exportService.exportPeople(response.getWriter(), rowFormat);
+    }
+
+    @GetMapping("/loans")
+    public void loans(@RequestParam(name = "format", defaultValue = "csv") String format,
+                      HttpServletResponse response) throws IOException {
+        RowWriter.Format rowFormat = prepare(response, "loans", format);
+        exportService.exportLoans(response.getWriter(), rowFormat);
+    }
+
+    // заголовки ответа: тип содержимого и имя файла
+    private RowWriter.Format prepare(HttpServletResponse response, String name, String format) {
+        RowWriter.Format rowFormat;
+        try {
+            rowFormat = RowWriter.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "неизвестный формат: " + format + " (csv или ndjson)");
+        }
+        String extension = rowFormat == RowWriter.Format.CSV ? "csv" : "ndjson";
+
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentType(rowFormat == RowWriter.Format.CSV ? "text/csv" : "application/x-ndjson");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + name + "." + extension + "\"");
+
+        return rowFormat;
+    }
+}
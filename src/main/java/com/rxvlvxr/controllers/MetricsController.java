@@ -0,0 +1,128 @@
+package com.rxvlvxr.controllers;
+
+import com.rxvlvxr.services.BookPrefixIndex;
+import com.rxvlvxr.services.BookSearchIndexer;
+import com.rxvlvxr.services.PersonNameIndex;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.concurrent.TimeUnit;
+
+// отдает текущие показатели пула соединений и кэша второго уровня в текстовом виде,
+// а также все метрики приложения в формате Prometheus и готовность экземпляра принимать запросы
+@Controller
+@RequestMapping("/metrics")
+public class MetricsController {
+
+    private final PrometheusMeterRegistry meterRegistry;
+    private final EntityManagerFactory entityManagerFactory;
+    private final BookPrefixIndex bookPrefixIndex;
+    private final PersonNameIndex personNameIndex;
+    private final BookSearchIndexer bookSearchIndexer;
+
+    @Autowired
+    public MetricsController(PrometheusMeterRegistry meterRegistry, EntityManagerFactory entityManagerFactory,
+                             BookPrefixIndex bookPrefixIndex, PersonNameIndex personNameIndex,
+                             BookSearchIndexer bookSearchIndexer) {
+        this.meterRegistry = meterRegistry;
+        this.entityManagerFactory = entityManagerFactory;
+        this.bookPrefixIndex = bookPrefixIndex;
+        this.personNameIndex = personNameIndex;
+        this.bookSearchIndexer = bookSearchIndexer;
+    }
+
+    // проверка готовности для балансировщика: 503, пока индексы в памяти строятся после старта
+    // и пока идет полная переиндексация полнотекстового поиска
+    @GetMapping(value = "/ready", produces = MediaType.TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public ResponseEntity<String> ready() {
+        boolean ready = bookPrefixIndex.isReady() && personNameIndex.isReady() && bookSearchIndexer.isReady();
+        String response = "book_prefix_index " + (bookPrefixIndex.isReady() ? "ready" : "warming_up") + '\n' +
+                "person_name_index " + (personNameIndex.isReady() ? "ready" : "warming_up") + '\n' +
+                "book_search_index " + (bookSearchIndexer.isReady() ? "ready" : "reindexing") + '\n';
+
+        return ResponseEntity.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(response);
+    }
+
+    // точка сбора для Prometheus: время ответа эндпоинтов и методов сервисов, выдачи книг, пул соединений,
+    // статистика Hibernate и JVM
+    @GetMapping(value = "/prometheus", produces = "text/plain; version=0.0.4; charset=utf-8")
+    @ResponseBody
+    public String prometheus() {
+        return meterRegistry.scrape();
+    }
+
+    @GetMapping(value = "/pool", produces = MediaType.TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public String pool() {
+        StringBuilder response = new StringBuilder();
+
+        appendGauge(response, "hikaricp.connections.active");
+        appendGauge(response, "hikaricp.connections.idle");
+        appendGauge(response, "hikaricp.connections.pending");
+        appendGauge(response, "hikaricp.connections");
+        appendGauge(response, "hikaricp.connections.max");
+
+        Timer acquire = meterRegistry.find("hikaricp.connections.acquire").timer();
+
+        if (acquire != null) {
+            response.append("hikaricp.connections.acquire.count ").append(acquire.count()).append('\n');
+            response.append("hikaricp.connections.acquire.max_ms ").append(acquire.max(TimeUnit.MILLISECONDS)).append('\n');
+            // перцентили времени получения соединения из пула
+            for (ValueAtPercentile percentile : acquire.takeSnapshot().percentileValues())
+                response.append("hikaricp.connections.acquire.p").append(Math.round(percentile.percentile() * 100))
+                        .append("_ms ").append(percentile.value(TimeUnit.MILLISECONDS)).append('\n');
+        }
+
+        return response.toString();
+    }
+
+    // попадания и промахи кэша второго уровня по регионам и кэша запросов
+    @GetMapping(value = "/cache", produces = MediaType.TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public String cache() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        StringBuilder response = new StringBuilder();
+
+        response.append("hibernate.cache.second_level.hits ").append(statistics.getSecondLevelCacheHitCount()).append('\n');
+        response.append("hibernate.cache.second_level.misses ").append(statistics.getSecondLevelCacheMissCount()).append('\n');
+        response.append("hibernate.cache.second_level.puts ").append(statistics.getSecondLevelCachePutCount()).append('\n');
+        response.append("hibernate.cache.query.hits ").append(statistics.getQueryCacheHitCount()).append('\n');
+        response.append("hibernate.cache.query.misses ").append(statistics.getQueryCacheMissCount()).append('\n');
+        response.append("hibernate.cache.query.puts ").append(statistics.getQueryCachePutCount()).append('\n');
+
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+            if (regionStatistics == null) continue;
+
+            response.append("hibernate.cache.region.hits{region=\"").append(region).append("\"} ")
+                    .append(regionStatistics.getHitCount()).append('\n');
+            response.append("hibernate.cache.region.misses{region=\"").append(region).append("\"} ")
+                    .append(regionStatistics.getMissCount()).append('\n');
+            response.append("hibernate.cache.region.elements{region=\"").append(region).append("\"} ")
+                    .append(regionStatistics.getElementCountInMemory()).append('\n');
+        }
+
+        return response.toString();
+    }
+
+    private void appendGauge(StringBuilder response, String name) {
+        Gauge gauge = meterRegistry.find(name).gauge();
+
+        if (gauge != null) response.append(name).append(' ').append((long) gauge.value()).append('\n');
+    }
+}
@@ -6,11 +6,14 @@ import com.rxvlvxr.util.PersonNameValidator;
 import com.rxvlvxr.util.PersonYearValidator;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collections;
+
 
 @Controller
 @RequestMapping("/people")
@@ -44,8 +47,14 @@ public class PeopleController {
         if (bindingResult.hasErrors())
             view = "people/new";
         else {
-            peopleService.save(person);
-            view = "redirect:/people";
+            try {
+                peopleService.save(person);
+                view = "redirect:/people";
+            } catch (DataIntegrityViolationException e) {
+                // то же имя одновременно зарегистрировали в другом запросе, сработал уникальный индекс
+                bindingResult.rejectValue("name", "", PersonNameValidator.NAME_TAKEN);
+                view = "people/new";
+            }
         }
 
         return view;
@@ -65,8 +74,12 @@ public class PeopleController {
 
     @GetMapping("/{id}")
     public String show(@PathVariable("id") int id, Model model) {
-        model.addAttribute("books", peopleService.findAllBooksByPersonId(id));
-        peopleService.findById(id).ifPresent(person -> model.addAttribute("person", person));
+        // человек и его книги загружаются одним запросом
+        model.addAttribute("books", Collections.emptyList());
+        peopleService.findWithBooksById(id).ifPresent(person -> {
+            model.addAttribute("person", person);
+            model.addAttribute("books", person.getBooks());
+        });
 
         return "people/show";
     }
@@ -81,8 +94,13 @@ public class PeopleController {
         if (bindingResult.hasErrors())
             view = "people/edit";
         else {
-            peopleService.update(id, person);
-            view = "redirect:/people";
+            try {
+                peopleService.update(id, person);
+                view = "redirect:/people";
+            } catch (DataIntegrityViolationException e) {
+                bindingResult.rejectValue("name", "", PersonNameValidator.NAME_TAKEN);
+                view = "people/edit";
+            }
         }
         return view;
     }
@@ -0,0 +1,27 @@
+package com.rxvlvxr.controllers;
+
+import com.rxvlvxr.services.StatsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+// показатели выдачи книг для руководства
+@Controller
+@RequestMapping("/stats")
+public class StatsController {
+    private final StatsService statsService;
+
+    @Autowired
+    public StatsController(StatsService statsService) {
+        this.statsService = statsService;
+    }
+
+    @GetMapping()
+    public String index(Model model) {
+        model.addAttribute("stats", statsService.find());
+
+        return "stats/index";
+    }
+}
@@ -0,0 +1,47 @@
+package com.rxvlvxr.dto;
+
+import java.util.Optional;
+
+// позиция в каталоге для keyset-пагинации: ключ (year, id) при сортировке по году или просто (id)
+public class BookCursor {
+    private final int year;
+    private final int id;
+
+    public BookCursor(int year, int id) {
+        this.year = year;
+        this.id = id;
+    }
+
+    public static BookCursor of(BookListItem book) {
+        return new BookCursor(book.getYear(), book.getId());
+    }
+
+    // разбираем курсор из параметра запроса, некорректное значение трактуем как отсутствие курсора
+    public static Optional<BookCursor> decode(String value, boolean sortByYear) {
+        if (value == null || value.isEmpty()) return Optional.empty();
+
+        try {
+            if (!sortByYear) return Optional.of(new BookCursor(0, Integer.parseInt(value)));
+
+            int separator = value.indexOf('_');
+            if (separator < 0) return Optional.empty();
+
+            return Optional.of(new BookCursor(Integer.parseInt(value.substring(0, separator)),
+                    Integer.parseInt(value.substring(separator + 1))));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    public String encode(boolean sortByYear) {
+        return sortByYear ? year + "_" + id : String.valueOf(id);
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
@@ -0,0 +1,13 @@
+package com.rxvlvxr.dto;
+
+// проекция книги для страниц со списками: из базы выбираются только эти столбцы,
+// объекты не попадают в persistence context и не проверяются на изменения
+public interface BookListItem {
+    int getId();
+
+    String getTitle();
+
+    String getAuthor();
+
+    int getYear();
+}
@@ -0,0 +1,6 @@
+package com.rxvlvxr.dto;
+
+// проекция книги для страницы поиска: к столбцам списка добавляется имя держателя (null, если книга свободна)
+public interface BookSearchItem extends BookListItem {
+    String getPersonName();
+}
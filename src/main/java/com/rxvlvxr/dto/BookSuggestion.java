@@ -0,0 +1,32 @@
+package com.rxvlvxr.dto;
+
+// облегченное представление книги для автодополнения, не является управляемой Hibernate сущностью
+public class BookSuggestion {
+    private final int id;
+    private final String title;
+    private final String author;
+    private final int year;
+
+    public BookSuggestion(int id, String title, String author, int year) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.year = year;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public int getYear() {
+        return year;
+    }
+}
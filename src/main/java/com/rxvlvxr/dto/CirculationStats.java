@@ -0,0 +1,116 @@
+package com.rxvlvxr.dto;
+
+import java.util.Date;
+import java.util.List;
+
+// показатели выдачи книг для страницы /stats (из сводных таблиц loan_stats_*)
+public class CirculationStats {
+    private final long checkouts;
+    private final long activeLoans;
+    private final long activeBorrowers;
+    private final long overdueLoans;
+    // время последней сверки сводок с таблицей book (null - сверки еще не было)
+    private final Date reconciledAt;
+    private final List<TopBook> topBooks;
+    private final List<YearLoans> years;
+
+    public CirculationStats(long checkouts, long activeLoans, long activeBorrowers, long overdueLoans, Date reconciledAt,
+                            List<TopBook> topBooks, List<YearLoans> years) {
+        this.checkouts = checkouts;
+        this.activeLoans = activeLoans;
+        this.activeBorrowers = activeBorrowers;
+        this.overdueLoans = overdueLoans;
+        this.reconciledAt = reconciledAt;
+        this.topBooks = topBooks;
+        this.years = years;
+    }
+
+    public long getCheckouts() {
+        return checkouts;
+    }
+
+    public long getActiveLoans() {
+        return activeLoans;
+    }
+
+    public long getActiveBorrowers() {
+        return activeBorrowers;
+    }
+
+    public long getOverdueLoans() {
+        return overdueLoans;
+    }
+
+    // доля просроченных среди выданных сейчас книг, в процентах
+    public double getOverdueRate() {
+        return activeLoans == 0 ? 0 : 100.0 * overdueLoans / activeLoans;
+    }
+
+    public Date getReconciledAt() {
+        return reconciledAt;
+    }
+
+    public List<TopBook> getTopBooks() {
+        return topBooks;
+    }
+
+    public List<YearLoans> getYears() {
+        return years;
+    }
+
+    // книга и число ее выдач за все время
+    public static class TopBook {
+        private final int id;
+        private final String title;
+        private final String author;
+        private final long checkouts;
+
+        public TopBook(int id, String title, String author, long checkouts) {
+            this.id = id;
+            this.title = title;
+            this.author = author;
+            this.checkouts = checkouts;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getAuthor() {
+            return author;
+        }
+
+        public long getCheckouts() {
+            return checkouts;
+        }
+    }
+
+    // выдачи за все время и книги на руках по году издания
+    public static class YearLoans {
+        private final int year;
+        private final long checkouts;
+        private final long active;
+
+        public YearLoans(int year, long checkouts, long active) {
+            this.year = year;
+            this.checkouts = checkouts;
+            this.active = active;
+        }
+
+        public int getYear() {
+            return year;
+        }
+
+        public long getCheckouts() {
+            return checkouts;
+        }
+
+        public long getActive() {
+            return active;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.rxvlvxr.dto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// результат массового импорта: количество загруженных и отклоненных строк и ошибки по строкам
+public class ImportReport {
+    // чтобы отчет не рос вместе с файлом, сохраняем только первые ошибки
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    private long imported;
+    private long rejected;
+    // диапазон id загруженных книг (в него могут попасть и книги, добавленные одновременно с импортом)
+    private Integer firstId;
+    private Integer lastId;
+    private final List<RowError> errors = new ArrayList<>();
+
+    public void addImported(long count, int fromId, int toId) {
+        imported += count;
+        firstId = firstId == null ? fromId : Math.min(firstId, fromId);
+        lastId = lastId == null ? toId : Math.max(lastId, toId);
+    }
+
+    public void reject(long line, String message) {
+        rejected++;
+        if (errors.size() < MAX_REPORTED_ERRORS) errors.add(new RowError(line, message));
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public Integer getFirstId() {
+        return firstId;
+    }
+
+    public Integer getLastId() {
+        return lastId;
+    }
+
+    public List<RowError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public static class RowError {
+        private final long line;
+        private final String message;
+
+        public RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.rxvlvxr.dto;
+
+import java.util.List;
+
+// страница keyset-пагинации: строки и курсоры на соседние страницы (null, если страницы нет)
+public class KeysetPage<T> {
+    private final List<T> content;
+    private final String nextCursor;
+    private final String prevCursor;
+
+    public KeysetPage(List<T> content, String nextCursor, String prevCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+        this.prevCursor = prevCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public String getPrevCursor() {
+        return prevCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public boolean hasPrev() {
+        return prevCursor != null;
+    }
+}
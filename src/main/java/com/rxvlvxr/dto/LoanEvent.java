@@ -0,0 +1,58 @@
+package com.rxvlvxr.dto;
+
+import java.util.Date;
+
+// событие журнала выдач (таблица loan_event): выдача, возврат или наступление просрочки книги
+public class LoanEvent {
+    public enum Type {
+        CHECKOUT("checkout"),
+        RETURN("return"),
+        OVERDUE("overdue");
+
+        // значение столбца loan_event.type
+        private final String code;
+
+        Type(String code) {
+            this.code = code;
+        }
+
+        public String getCode() {
+            return code;
+        }
+    }
+
+    private final Type type;
+    private final int bookId;
+    private final int personId;
+    private final Date occurredAt;
+    // срок возврата, действовавший в момент события
+    private final Date dueAt;
+
+    public LoanEvent(Type type, int bookId, int personId, Date occurredAt, Date dueAt) {
+        this.type = type;
+        this.bookId = bookId;
+        this.personId = personId;
+        this.occurredAt = occurredAt;
+        this.dueAt = dueAt;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public int getPersonId() {
+        return personId;
+    }
+
+    public Date getOccurredAt() {
+        return occurredAt;
+    }
+
+    public Date getDueAt() {
+        return dueAt;
+    }
+}
@@ -0,0 +1,26 @@
+package com.rxvlvxr.dto;
+
+// результат выдачи или возврата книги
+public enum LoanResult {
+    OK(null),
+    BOOK_NOT_FOUND("Книга не найдена"),
+    PERSON_NOT_FOUND("Человек не найден"),
+    ALREADY_TAKEN("Книга уже выдана другому человеку"),
+    ALREADY_FREE("Книга уже свободна"),
+    // книгу изменили параллельно несколько раз подряд, попытки исчерпаны
+    CONFLICT("Книгу одновременно изменил другой пользователь, повторите действие");
+
+    private final String message;
+
+    LoanResult(String message) {
+        this.message = message;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isOk() {
+        return this == OK;
+    }
+}
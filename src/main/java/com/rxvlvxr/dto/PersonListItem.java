@@ -0,0 +1,10 @@
+package com.rxvlvxr.dto;
+
+// проекция человека для списка людей и выбора держателя книги
+public interface PersonListItem {
+    int getId();
+
+    String getName();
+
+    int getBirthYear();
+}
@@ -0,0 +1,42 @@
+package com.rxvlvxr.dto;
+
+import java.util.List;
+
+// страница результатов полнотекстового поиска, отсортированных по релевантности
+public class SearchPage<T> {
+    private final List<T> content;
+    private final long totalHits;
+    private final int page;
+    private final int size;
+
+    public SearchPage(List<T> content, long totalHits, int page, int size) {
+        this.content = content;
+        this.totalHits = totalHits;
+        this.page = page;
+        this.size = size;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean hasNext() {
+        return (long) (page + 1) * size < totalHits;
+    }
+
+    public boolean hasPrev() {
+        return page > 0;
+    }
+}
@@ -1,18 +1,37 @@
 package com.rxvlvxr.models;
 
+import com.rxvlvxr.config.BookSearchAnalysisConfigurer;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.Indexed;
 
 import java.util.Date;
 
 // указываем что это сущность
 @Entity
 // указываем явно на таблицу к которой привязана эта сущность
-@Table(name = "book")
+// индекс по due_at нужен для отчета о просроченных книгах по всей библиотеке
+@Table(name = "book", indexes = @Index(name = "book_due_at_idx", columnList = "due_at"))
+// книга индексируется в полнотекстовом индексе Hibernate Search, индекс обновляется при каждом изменении сущности
+@Indexed
+// сущность хранится в кэше второго уровня, регион настраивается в ehcache.xml
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+// UPDATE содержит только измененные столбцы: правка названия не переписывает держателя и сроки, а выдача - название
+@DynamicUpdate
+// план выборки книги вместе с держателем одним запросом
+@NamedEntityGraph(name = Book.WITH_PERSON, attributeNodes = @NamedAttributeNode("person"))
 public class Book {
+    public static final String WITH_PERSON = "Book.withPerson";
+
     // указываем что это id
     @Id
     // указываем что генерироваться id будет по уникальности последовательно
@@ -23,11 +42,13 @@ public class Book {
     @NotBlank(message = "Поле названия книги должно быть заполнено")
     @Size(min = 2, max = 255, message = "Название должно быть в диапазоне от 2 до 100 символов")
     @Pattern(regexp = "[A-ZА-ЯЁ][a-zа-яё]+[\\sA-zА-яё]*", message = "Пример ввода: Солярис")
+    @FullTextField(analyzer = BookSearchAnalysisConfigurer.BOOK_TEXT)
     @Column(name = "title")
     private String title;
     @NotBlank(message = "Поле автора должно быть заполнено")
     @Size(min = 2, max = 100, message = "Имя должно быть в диапазоне от 2 до 100 символов")
     @Pattern(regexp = "[А-ЯЁ][а-яё]+\\s[А-ЯЁ][а-яё]+", message = "Пример ввода: Станислав Лем")
+    @FullTextField(analyzer = BookSearchAnalysisConfigurer.BOOK_TEXT)
     @Column(name = "author")
     private String author;
     @Min(value = 1801, message = "Год должен быть больше 1800")
@@ -41,9 +62,16 @@ public class Book {
     @Column(name = "taken_at")
     @Temporal(TemporalType.TIMESTAMP)
     private Date takenAt;
-    // это поле будет игнорироваться Hibernate
-    @Transient
-    private boolean expired;
+    // дата, до которой книгу нужно вернуть; задается при выдаче книги
+    @Column(name = "due_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date dueAt;
+    // версия строки для оптимистической блокировки: UPDATE выполняется с условием version = <прочитанная версия>,
+    // поэтому из двух одновременных выдач одной книги успешна только одна
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private int version;
 
     public Book() {
     }
@@ -96,11 +124,24 @@ public class Book {
         this.takenAt = takenAt;
     }
 
-    public boolean isExpired() {
-        return expired;
+    public Date getDueAt() {
+        return dueAt;
+    }
+
+    public void setDueAt(Date dueAt) {
+        this.dueAt = dueAt;
     }
 
-    public void setExpired(boolean expired) {
-        this.expired = expired;
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    // книга просрочена, если срок возврата уже прошел
+    public boolean isExpired() {
+        return dueAt != null && dueAt.before(new Date());
     }
 }
@@ -5,12 +5,21 @@ import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.util.List;
 
 // этот класс соответствует сущности person
 @Entity
-@Table(name = "person")
+// имя человека уникально, ограничение в базе данных гарантирует это и при одновременной регистрации
+@Table(name = "person", uniqueConstraints = @UniqueConstraint(name = "person_name_key", columnNames = "name"))
+// сущность хранится в кэше второго уровня, регион настраивается в ehcache.xml
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+// UPDATE содержит только измененные столбцы
+@DynamicUpdate
 public class Person {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -26,6 +35,7 @@ public class Person {
     private int birthYear;
     // указываем на связь между сущностями
     @OneToMany(mappedBy = "person")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private List<Book> books;
 
     public Person() {
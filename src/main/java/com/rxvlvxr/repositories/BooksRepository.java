@@ -1,14 +1,102 @@
 package com.rxvlvxr.repositories;
 
+import com.rxvlvxr.dto.BookListItem;
+import com.rxvlvxr.dto.BookSearchItem;
+import com.rxvlvxr.dto.BookSuggestion;
 import com.rxvlvxr.models.Book;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 // указываем что это репозиторий
 @Repository
 public interface BooksRepository extends JpaRepository<Book, Integer> {
+    // списки каталога читаются в виде проекций и кэшируются в кэше запросов Hibernate
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    Page<BookListItem> findAllBy(Pageable pageable);
+
     // добавляем нестандартный метод для поиска строки начало названия которой совпадает с параметром title
-    List<Book> findByTitleStartingWith(String title);
+    // имя держателя книги выбирается тем же запросом
+    @Query("select b.id as id, b.title as title, b.author as author, b.year as year, p.name as personName " +
+            "from Book b left join b.person p where b.title like concat(:title, '%')")
+    List<BookSearchItem> findByTitleStartingWith(@Param("title") String title);
+
+    // проекции книг по списку id (для результатов полнотекстового поиска)
+    @Query("select b.id as id, b.title as title, b.author as author, b.year as year, p.name as personName " +
+            "from Book b left join b.person p where b.id in :ids")
+    List<BookSearchItem> findSearchItemsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // книга вместе с держателем одним запросом
+    @EntityGraph(Book.WITH_PERSON)
+    Optional<Book> findWithPersonById(int id);
+
+    // keyset-пагинация по (year, id): вместо OFFSET продолжаем с последнего ключа предыдущей страницы,
+    // размер выборки задается через Pageable (используется только limit)
+    @Query("select b.id as id, b.title as title, b.author as author, b.year as year from Book b where b.year > :year or (b.year = :year and b.id > :id) order by b.year asc, b.id asc")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<BookListItem> findAfterYearAndId(@Param("year") int year, @Param("id") int id, Pageable limit);
+
+    @Query("select b.id as id, b.title as title, b.author as author, b.year as year from Book b where b.year < :year or (b.year = :year and b.id < :id) order by b.year desc, b.id desc")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<BookListItem> findBeforeYearAndId(@Param("year") int year, @Param("id") int id, Pageable limit);
+
+    // keyset-пагинация по id для режима без сортировки
+    @Query("select b.id as id, b.title as title, b.author as author, b.year as year from Book b where b.id > :id order by b.id asc")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<BookListItem> findAfterId(@Param("id") int id, Pageable limit);
+
+    @Query("select b.id as id, b.title as title, b.author as author, b.year as year from Book b where b.id < :id order by b.id desc")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<BookListItem> findBeforeId(@Param("id") int id, Pageable limit);
+
+    // все книги в виде легких DTO для построения префиксного индекса, потоком через серверный курсор
+    @Query("select new com.rxvlvxr.dto.BookSuggestion(b.id, b.title, b.author, b.year) from Book b")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<BookSuggestion> streamSuggestions();
+
+    // книги из диапазона id, например загруженные одним импортом
+    @Query("select new com.rxvlvxr.dto.BookSuggestion(b.id, b.title, b.author, b.year) from Book b " +
+            "where b.id between :fromId and :toId")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<BookSuggestion> streamSuggestionsByIdBetween(@Param("fromId") int fromId, @Param("toId") int toId);
+
+    // id книг, выданных человеку (по индексу book_person_id_idx), например для возврата перед его удалением
+    @Query("select b.id from Book b where b.person.id = :personId")
+    List<Integer> findIdsByPersonId(@Param("personId") int personId);
+
+    // просроченные книги по всей библиотеке вместе с держателями, один проход по индексу book_due_at_idx
+    @Query(value = "select b from Book b join fetch b.person where b.dueAt < :now order by b.dueAt asc, b.id asc",
+            countQuery = "select count(b) from Book b where b.dueAt < :now")
+    Page<Book> findOverdue(@Param("now") Date now, Pageable pageable);
+
+    // потоковое чтение всего каталога через серверный курсор PostgreSQL (fetch size) без кэша второго уровня
+    @Query("select b from Book b order by b.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    Stream<Book> streamAll();
+
+    // потоковое чтение выданных книг вместе с держателями
+    @Query("select b from Book b join fetch b.person where b.person is not null order by b.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    Stream<Book> streamLoans();
 }
@@ -1,11 +1,49 @@
 package com.rxvlvxr.repositories;
 
+import com.rxvlvxr.dto.PersonListItem;
 import com.rxvlvxr.models.Person;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
 public interface PeopleRepository extends JpaRepository<Person, Integer> {
+    // список людей читается в виде проекций и кэшируется в кэше запросов Hibernate
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<PersonListItem> findAllBy();
+
+    // люди, имя которых начинается с name, по алфавиту (выбор держателя книги), размер выборки задается через Pageable
+    List<PersonListItem> findByNameStartingWithOrderByName(String name, Pageable limit);
+
+    // человек вместе со списком книг одним запросом
+    @EntityGraph(attributePaths = "books")
+    Optional<Person> findWithBooksById(int id);
+
     // ищем строку по параметру name
     Person findPersonByName(String name);
+
+    // проверка занятости имени по уникальному индексу person_name_key без загрузки сущности
+    boolean existsByName(String name);
+
+    // все имена для построения фильтра занятых имен
+    @Query("select p.name from Person p")
+    List<String> findAllNames();
+
+    // потоковое чтение всех людей через серверный курсор PostgreSQL
+    @Query("select p from Person p order by p.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    Stream<Person> streamAll();
 }
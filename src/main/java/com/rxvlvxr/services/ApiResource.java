@@ -0,0 +1,78 @@
+package com.rxvlvxr.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// ресурсы JSON API: поле ответа -> выражение JPQL, которым оно выбирается
+// в запрос попадают только запрошенные поля, соединение с person добавляется, только если нужно полю человека
+public enum ApiResource {
+    BOOKS("Book b", "b.id", "left join b.person p", fields(
+            "id", "b.id",
+            "title", "b.title",
+            "author", "b.author",
+            "year", "b.year",
+            // внешний ключ читается из строки book без соединения с person
+            "person_id", "b.person.id",
+            "person_name", "p.name",
+            "taken_at", "b.takenAt",
+            "due_at", "b.dueAt")),
+    PEOPLE("Person p", "p.id", null, fields(
+            "id", "p.id",
+            "name", "p.name",
+            "birth_year", "p.birthYear")),
+    LOANS("Book b join b.person p", "b.id", null, fields(
+            "book_id", "b.id",
+            "title", "b.title",
+            "person_id", "p.id",
+            "name", "p.name",
+            "taken_at", "b.takenAt",
+            "due_at", "b.dueAt",
+            "expired", "case when b.dueAt < current_timestamp then true else false end"));
+
+    private final String from;
+    // ключ курсора и сортировки
+    private final String key;
+    private final String personJoin;
+    private final Map<String, String> fields;
+
+    ApiResource(String from, String key, String personJoin, Map<String, String> fields) {
+        this.from = from;
+        this.key = key;
+        this.personJoin = personJoin;
+        this.fields = fields;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Set<String> getFieldNames() {
+        return fields.keySet();
+    }
+
+    public String path(String field) {
+        return fields.get(field);
+    }
+
+    // соединение, которое нужно для выбранных полей (или null)
+    public String joinFor(Iterable<String> selected) {
+        if (personJoin == null) return null;
+
+        for (String field : selected)
+            if (fields.get(field).startsWith("p.")) return personJoin;
+
+        return null;
+    }
+
+    private static Map<String, String> fields(String... pairs) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) fields.put(pairs[i], pairs[i + 1]);
+
+        return fields;
+    }
+}
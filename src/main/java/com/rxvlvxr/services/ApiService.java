@@ -0,0 +1,120 @@
+package com.rxvlvxr.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+// чтение ресурсов JSON API: запрос выбирает только запрошенные столбцы (кортежи, без сущностей),
+// строки пишутся в JSON по мере чтения из результата запроса
+@Service
+@Transactional(readOnly = true)
+public class ApiService {
+    // даты в UTC с суффиксом Z (2024-03-01T09:15:30.123Z), чтобы клиент не гадал о часовом поясе сервера
+    // DateTimeFormatter неизменяемый, один экземпляр на все запросы
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_INSTANT;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // страница ресурса после курсора after (id последней строки предыдущей страницы), в порядке id
+    // ответ: {"data": [...], "next": "<курсор следующей страницы или null>"}
+    public void writePage(ApiResource resource, List<String> fields, Optional<Integer> after, int limit,
+                          JsonGenerator json) throws IOException {
+        TypedQuery<Tuple> query = query(resource, fields, after.isPresent() ? resource.getKey() + " > :after" : null);
+        after.ifPresent(id -> query.setParameter("after", id));
+        // на одну строку больше, чтобы узнать, есть ли следующая страница
+        query.setMaxResults(limit + 1);
+
+        json.writeStartObject();
+        json.writeArrayFieldStart("data");
+
+        Integer last = null;
+        boolean hasNext = false;
+        try (Stream<Tuple> rows = query.getResultStream()) {
+            Iterator<Tuple> iterator = rows.iterator();
+            for (int count = 0; iterator.hasNext(); count++) {
+                Tuple row = iterator.next();
+
+                if (count == limit) {
+                    hasNext = true;
+                    break;
+                }
+
+                writeRow(row, fields, json);
+                last = row.get(0, Integer.class);
+            }
+        }
+
+        json.writeEndArray();
+        if (hasNext) json.writeStringField("next", String.valueOf(last));
+        else json.writeNullField("next");
+        json.writeEndObject();
+    }
+
+    // несколько строк ресурса по списку id одним запросом, в порядке id; отсутствующие id пропускаются
+    public void writeByIds(ApiResource resource, List<String> fields, List<Integer> ids,
+                           JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeArrayFieldStart("data");
+
+        if (!ids.isEmpty()) {
+            TypedQuery<Tuple> query = query(resource, fields, resource.getKey() + " in :ids");
+            query.setParameter("ids", ids);
+
+            try (Stream<Tuple> rows = query.getResultStream()) {
+                Iterator<Tuple> iterator = rows.iterator();
+                while (iterator.hasNext()) writeRow(iterator.next(), fields, json);
+            }
+        }
+
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    // первый столбец - всегда ключ (для курсора), затем запрошенные поля
+    private TypedQuery<Tuple> query(ApiResource resource, List<String> fields, String condition) {
+        StringBuilder jpql = new StringBuilder("select ").append(resource.getKey());
+        for (String field : fields) jpql.append(", ").append(resource.path(field));
+
+        jpql.append(" from ").append(resource.getFrom());
+
+        String join = resource.joinFor(fields);
+        if (join != null) jpql.append(' ').append(join);
+        if (condition != null) jpql.append(" where ").append(condition);
+
+        jpql.append(" order by ").append(resource.getKey());
+
+        return entityManager.createQuery(jpql.toString(), Tuple.class)
+                .setHint(HibernateHints.HINT_READ_ONLY, true);
+    }
+
+    private static void writeRow(Tuple row, List<String> fields, JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        for (int i = 0; i < fields.size(); i++) {
+            Object value = row.get(i + 1);
+
+            json.writeFieldName(fields.get(i));
+            if (value == null) json.writeNull();
+            else if (value instanceof Integer) json.writeNumber((Integer) value);
+            else if (value instanceof Boolean) json.writeBoolean((Boolean) value);
+            // через getTime(): java.sql.Date не поддерживает toInstant()
+            else if (value instanceof Date) json.writeString(DATE_FORMAT.format(Instant.ofEpochMilli(((Date) value).getTime())));
+            else json.writeString(value.toString());
+        }
+        json.writeEndObject();
+    }
+}
@@ -0,0 +1,82 @@
+package com.rxvlvxr.services;
+
+import com.rxvlvxr.dto.BookSuggestion;
+import com.rxvlvxr.dto.ImportReport;
+import com.rxvlvxr.repositories.BooksRepository;
+import com.rxvlvxr.util.BookImporter;
+import com.rxvlvxr.util.BookValidator;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.validation.Validator;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.stream.Stream;
+
+// массовый импорт книг через COPY; после загрузки обновляем индексы и кэши, которые не видят записи в обход Hibernate,
+// только для загруженных книг
+// импорт нужен редко, поэтому сервис создается при первом обращении, а не при старте
+@Service
+@Lazy
+public class BookImportService {
+    private final DataSource dataSource;
+    private final EntityManagerFactory entityManagerFactory;
+    private final BooksRepository booksRepository;
+    private final BookPrefixIndex bookPrefixIndex;
+    private final BookSearchIndexer bookSearchIndexer;
+    private final CatalogVersion catalogVersion;
+    private final BookIndexCache bookIndexCache;
+    private final BookImporter bookImporter;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public BookImportService(DataSource dataSource, EntityManagerFactory entityManagerFactory,
+                             BooksRepository booksRepository, BookPrefixIndex bookPrefixIndex,
+                             BookSearchIndexer bookSearchIndexer, CatalogVersion catalogVersion,
+                             BookIndexCache bookIndexCache, PlatformTransactionManager transactionManager,
+                             @Qualifier("validator") Validator validator, BookValidator bookValidator,
+                             @Value("${books.import.chunk_size:5000}") int chunkSize) {
+        this.dataSource = dataSource;
+        this.entityManagerFactory = entityManagerFactory;
+        this.booksRepository = booksRepository;
+        this.bookPrefixIndex = bookPrefixIndex;
+        this.bookSearchIndexer = bookSearchIndexer;
+        this.catalogVersion = catalogVersion;
+        this.bookIndexCache = bookIndexCache;
+        this.bookImporter = new BookImporter(validator, bookValidator, chunkSize);
+        // пишущая транзакция, чтобы только что загруженные книги читались из основной базы, а не с реплики
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public ImportReport importBooks(Reader input, BookImporter.Format format) throws IOException {
+        ImportReport report = bookImporter.run(input, format, dataSource::getConnection);
+
+        if (report.getImported() > 0) refresh(report.getFirstId(), report.getLastId());
+
+        return report;
+    }
+
+    // книги с id от fromId до toId записаны в обход Hibernate (импорт в этом приложении или BookImportCli)
+    public void refresh(int fromId, int toId) {
+        // COPY не обновляет метки времени таблиц Hibernate, поэтому кэш запросов сбрасываем явно
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<BookSuggestion> books = booksRepository.streamSuggestionsByIdBetween(fromId, toId)) {
+                books.forEach(bookPrefixIndex::put);
+            }
+        });
+        bookSearchIndexer.reindex(fromId, toId);
+
+        catalogVersion.bump();
+        bookIndexCache.invalidate();
+    }
+}
@@ -0,0 +1,91 @@
+package com.rxvlvxr.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// кэш отрендеренного списка книг страницы books/index по параметрам запроса
+// (page, books_per_page, sort_by_year и курсоры keyset-пагинации)
+// размер ограничен, при переполнении вытесняется давно не запрашиваемый фрагмент (LRU)
+// весь кэш сбрасывается после коммита любого изменения книг в BooksService и массового импорта
+@Component
+public class BookIndexCache {
+    private final Map<String, String> fragments;
+    // поколение кэша: фрагмент, отрендеренный до сброса, в кэш уже не попадает
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public BookIndexCache(@Value("${books.index_cache.size:256}") int size, MeterRegistry meterRegistry) {
+        this.fragments = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > size;
+            }
+        };
+
+        this.hits = Counter.builder("books.index_cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("books.index_cache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("books.index_cache.size", this, BookIndexCache::size).register(meterRegistry);
+    }
+
+    public static String key(Object... parameters) {
+        StringBuilder key = new StringBuilder();
+        for (Object parameter : parameters) key.append(parameter).append('|');
+
+        return key.toString();
+    }
+
+    // поколение нужно запомнить до чтения данных из базы и передать в put
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public synchronized String get(String key) {
+        String fragment = fragments.get(key);
+
+        if (fragment != null) hits.increment();
+        else misses.increment();
+
+        return fragment;
+    }
+
+    public synchronized void put(String key, long generation, String fragment) {
+        if (this.generation.get() == generation) fragments.put(key, fragment);
+    }
+
+    public void invalidate() {
+        afterCommit(() -> {
+            synchronized (this) {
+                generation.incrementAndGet();
+                fragments.clear();
+            }
+        });
+    }
+
+    private synchronized int size() {
+        return fragments.size();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        else action.run();
+    }
+}
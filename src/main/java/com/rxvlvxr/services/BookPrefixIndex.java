@@ -0,0 +1,415 @@
+package com.rxvlvxr.services;
+
+import com.rxvlvxr.dto.BookSuggestion;
+import com.rxvlvxr.models.Book;
+import com.rxvlvxr.repositories.BooksRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+// индекс начал слов в названиях и авторах книг для автодополнения без обращения к базе данных
+// ключи приводятся к нижнему регистру без учета локали, поэтому поиск не зависит от регистра ввода
+// основа индекса - неизменяемый снимок: окончания текста книги с начала каждого слова, отсортированные
+// в массиве, префикс ищется двоичным поиском; снимок заменяется целиком одной записью volatile-поля,
+// а изменения после его построения хранятся отдельно и раз в COMPACT_THRESHOLD изменений вливаются в новый снимок
+// первый снимок строится в фоне после старта, до этого поиск возвращает пустой список (isReady() == false)
+@Component
+public class BookPrefixIndex {
+    private static final Logger log = LoggerFactory.getLogger(BookPrefixIndex.class);
+    // разделитель названия и автора в тексте книги, меньше любой буквы и пробела
+    private static final char SEPARATOR = '\u0001';
+    private static final int COMPACT_THRESHOLD = 4096;
+    private static final long RETRY_MILLIS = 5000;
+
+    private final BooksRepository booksRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile boolean ready;
+    // изменения после построения снимка по id книги, заменяют ее версию в снимке
+    private final Map<Integer, Change> changes = new HashMap<>();
+    private long sequence;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // построение из базы и слияние изменений не выполняются одновременно
+    private final Object rebuildLock = new Object();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "book-prefix-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public BookPrefixIndex(BooksRepository booksRepository, PlatformTransactionManager transactionManager) {
+        this.booksRepository = booksRepository;
+        // пишущая транзакция, чтобы каталог читался из основной базы, а не с отстающей реплики
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // чтение всего каталога не задерживает старт контекста: индекс строится в потоке слияния,
+    // при ошибке (например, база данных еще недоступна) попытка повторяется
+    @PostConstruct
+    public void warmUp() {
+        compactor.execute(() -> {
+            while (!ready) {
+                try {
+                    build();
+                } catch (RuntimeException e) {
+                    log.warn("Не удалось построить префиксный индекс, повтор через {} мс", RETRY_MILLIS, e);
+                    try {
+                        Thread.sleep(RETRY_MILLIS);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void build() {
+        synchronized (rebuildLock) {
+            long started;
+            lock.readLock().lock();
+            try {
+                started = sequence;
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            // книги читаются потоком, в памяти остается только новый снимок
+            Snapshot.Builder builder = new Snapshot.Builder();
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<BookSuggestion> books = booksRepository.streamSuggestions()) {
+                    books.forEach(builder::add);
+                }
+            });
+            Snapshot built = builder.build();
+
+            lock.writeLock().lock();
+            try {
+                snapshot = built;
+                // изменения, зафиксированные до начала чтения, уже есть в снимке
+                changes.values().removeIf(change -> change.sequence <= started);
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            log.info("Префиксный индекс построен: {} книг", built.books.length);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        compactor.shutdownNow();
+    }
+
+    // возвращает не больше limit книг, в названии или авторе которых есть слово, начинающееся с prefix
+    // книги идут в алфавитном порядке совпавших окончаний
+    public List<BookSuggestion> search(String prefix, int limit) {
+        String key = fold(prefix);
+        // без снимка нашлись бы только измененные после старта книги
+        if (key.isEmpty() || limit <= 0 || !ready) return Collections.emptyList();
+
+        lock.readLock().lock();
+        try {
+            Snapshot current = snapshot;
+
+            // совпадения среди измененных книг, в том же порядке, что и в снимке
+            List<Change> changed = new ArrayList<>();
+            for (Change change : changes.values())
+                if (change.suggestion != null && change.offset(key) >= 0) changed.add(change);
+            changed.sort((a, b) -> {
+                int result = compare(a.text, a.offset(key), b.text, b.offset(key));
+                return result != 0 ? result : Integer.compare(a.suggestion.getId(), b.suggestion.getId());
+            });
+
+            Map<Integer, BookSuggestion> result = new LinkedHashMap<>();
+            int next = 0;
+            for (int i = current.lowerBound(key); i < current.suffixes.length && result.size() < limit; i++) {
+                int slot = Snapshot.slot(current.suffixes[i]);
+                int offset = Snapshot.offset(current.suffixes[i]);
+                String text = current.texts[slot];
+                if (!text.startsWith(key, offset)) break;
+
+                for (; next < changed.size() && result.size() < limit; next++) {
+                    Change change = changed.get(next);
+                    int order = compare(change.text, change.offset(key), text, offset);
+                    if (order > 0 || order == 0 && change.suggestion.getId() > current.books[slot].getId()) break;
+                    result.putIfAbsent(change.suggestion.getId(), change.suggestion);
+                }
+
+                BookSuggestion book = current.books[slot];
+                // измененная или удаленная книга берется из changes
+                if (result.size() < limit && !changes.containsKey(book.getId())) result.putIfAbsent(book.getId(), book);
+            }
+
+            for (; next < changed.size() && result.size() < limit; next++)
+                result.putIfAbsent(changed.get(next).suggestion.getId(), changed.get(next).suggestion);
+
+            return new ArrayList<>(result.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // добавляем или обновляем книгу в индексе после фиксации транзакции
+    public void put(Book book) {
+        BookSuggestion suggestion = new BookSuggestion(book.getId(), book.getTitle(), book.getAuthor(), book.getYear());
+
+        afterCommit(() -> change(suggestion.getId(), suggestion));
+    }
+
+    // книга, записанная в обход Hibernate (импорт), уже зафиксирована
+    public void put(BookSuggestion suggestion) {
+        change(suggestion.getId(), suggestion);
+    }
+
+    public void remove(int id) {
+        afterCommit(() -> change(id, null));
+    }
+
+    private void change(int id, BookSuggestion suggestion) {
+        boolean full;
+        lock.writeLock().lock();
+        try {
+            changes.put(id, new Change(suggestion, ++sequence));
+            full = changes.size() >= COMPACT_THRESHOLD;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (full && compacting.compareAndSet(false, true)) compactor.execute(this::compact);
+    }
+
+    // вливаем накопленные изменения в новый снимок, не останавливая поиск
+    private void compact() {
+        try {
+            synchronized (rebuildLock) {
+                Snapshot current;
+                Map<Integer, Change> merged;
+                lock.readLock().lock();
+                try {
+                    current = snapshot;
+                    merged = new HashMap<>(changes);
+                } finally {
+                    lock.readLock().unlock();
+                }
+
+                Snapshot.Builder builder = new Snapshot.Builder();
+                for (BookSuggestion book : current.books)
+                    if (!merged.containsKey(book.getId())) builder.add(book);
+                for (Change change : merged.values())
+                    if (change.suggestion != null) builder.add(change.suggestion);
+                Snapshot built = builder.build();
+
+                lock.writeLock().lock();
+                try {
+                    snapshot = built;
+                    // изменения, пришедшие во время слияния, остаются
+                    merged.forEach(changes::remove);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Не удалось обновить снимок префиксного индекса", e);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    // текст книги: приведенные название и автор через разделитель
+    private static String text(BookSuggestion suggestion) {
+        return fold(suggestion.getTitle()) + SEPARATOR + fold(suggestion.getAuthor());
+    }
+
+    private static boolean isWordStart(String text, int i) {
+        return i == 0 || text.charAt(i - 1) == ' ' || text.charAt(i - 1) == SEPARATOR;
+    }
+
+    // лексикографическое сравнение окончаний a с offsetA и b с offsetB до конца названия или автора,
+    // равные окончания разных книг затем упорядочиваются по id
+    private static int compare(String a, int offsetA, String b, int offsetB) {
+        int endA = end(a, offsetA), endB = end(b, offsetB);
+        int length = Math.min(endA - offsetA, endB - offsetB);
+        for (int i = 0; i < length; i++) {
+            int diff = a.charAt(offsetA + i) - b.charAt(offsetB + i);
+            if (diff != 0) return diff;
+        }
+
+        return (endA - offsetA) - (endB - offsetB);
+    }
+
+    private static int end(String text, int offset) {
+        int separator = text.indexOf(SEPARATOR, offset);
+
+        return separator < 0 ? text.length() : separator;
+    }
+
+    // приводим строку к единой форме: нормализация Unicode, нижний регистр, ё -> е, схлопывание пробелов
+    static String fold(String value) {
+        if (value == null) return "";
+
+        return Normalizer.normalize(value, Normalizer.Form.NFKC)
+                .toLowerCase(Locale.ROOT)
+                .replace('ё', 'е')
+                .trim()
+                .replaceAll("\\s+", " ");
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        else action.run();
+    }
+
+    // новая версия книги (suggestion == null - книга удалена) и порядковый номер изменения
+    private static final class Change {
+        private final BookSuggestion suggestion;
+        private final String text;
+        private final long sequence;
+
+        private Change(BookSuggestion suggestion, long sequence) {
+            this.suggestion = suggestion;
+            this.text = suggestion == null ? "" : text(suggestion);
+            this.sequence = sequence;
+        }
+
+        // начало первого слова, с которого начинается key, или -1
+        private int offset(String key) {
+            for (int i = 0; i < text.length(); i++)
+                if (isWordStart(text, i) && text.startsWith(key, i)) return i;
+
+            return -1;
+        }
+    }
+
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(new BookSuggestion[0], new String[0], new long[0]);
+
+        // книги и их тексты по номеру слота
+        private final BookSuggestion[] books;
+        private final String[] texts;
+        // окончания с начала каждого слова: (слот << 32) | смещение в тексте, по возрастанию текста окончания
+        private final long[] suffixes;
+
+        private Snapshot(BookSuggestion[] books, String[] texts, long[] suffixes) {
+            this.books = books;
+            this.texts = texts;
+            this.suffixes = suffixes;
+        }
+
+        private static int slot(long suffix) {
+            return (int) (suffix >>> 32);
+        }
+
+        private static int offset(long suffix) {
+            return (int) suffix;
+        }
+
+        // первое окончание, не меньшее key
+        private int lowerBound(String key) {
+            int low = 0, high = suffixes.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(texts[slot(suffixes[middle])], offset(suffixes[middle]), key, 0) < 0) low = middle + 1;
+                else high = middle;
+            }
+
+            return low;
+        }
+
+        private int compareSuffixes(long a, long b) {
+            int result = compare(texts[slot(a)], offset(a), texts[slot(b)], offset(b));
+
+            return result != 0 ? result : Integer.compare(books[slot(a)].getId(), books[slot(b)].getId());
+        }
+
+        private static final class Builder {
+            private BookSuggestion[] books = new BookSuggestion[1024];
+            private String[] texts = new String[1024];
+            private long[] suffixes = new long[4096];
+            private int size;
+            private int suffixCount;
+
+            private void add(BookSuggestion book) {
+                if (size == books.length) {
+                    books = Arrays.copyOf(books, size * 2);
+                    texts = Arrays.copyOf(texts, size * 2);
+                }
+
+                String text = text(book);
+                books[size] = book;
+                texts[size] = text;
+
+                for (int i = 0; i < text.length(); i++) {
+                    if (!isWordStart(text, i) || text.charAt(i) == SEPARATOR) continue;
+                    if (suffixCount == suffixes.length) suffixes = Arrays.copyOf(suffixes, suffixCount * 2);
+                    suffixes[suffixCount++] = ((long) size << 32) | i;
+                }
+
+                size++;
+            }
+
+            private Snapshot build() {
+                Snapshot snapshot = new Snapshot(Arrays.copyOf(books, size), Arrays.copyOf(texts, size),
+                        Arrays.copyOf(suffixes, suffixCount));
+                books = null;
+                texts = null;
+                suffixes = null;
+
+                snapshot.sort();
+                return snapshot;
+            }
+        }
+
+        // сортировка слиянием без упаковки long в объекты
+        private void sort() {
+            long[] buffer = new long[suffixes.length];
+            long[] from = suffixes, to = buffer;
+
+            for (int width = 1; width < suffixes.length; width *= 2) {
+                for (int low = 0; low < suffixes.length; low += 2 * width) {
+                    int middle = Math.min(low + width, suffixes.length), high = Math.min(low + 2 * width, suffixes.length);
+                    int i = low, j = middle, k = low;
+                    while (i < middle && j < high) to[k++] = compareSuffixes(from[i], from[j]) <= 0 ? from[i++] : from[j++];
+                    while (i < middle) to[k++] = from[i++];
+                    while (j < high) to[k++] = from[j++];
+                }
+
+                long[] swap = from;
+                from = to;
+                to = swap;
+            }
+
+            if (from != suffixes) System.arraycopy(from, 0, suffixes, 0, suffixes.length);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.rxvlvxr.services;
+
+import com.rxvlvxr.models.Book;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.massindexing.MassIndexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+// перестраивает полнотекстовый индекс книг в фоне, не блокируя обработку запросов
+// пока идет полная переиндексация, поиск возвращает не все книги, поэтому GET /metrics/ready отвечает 503
+@Component
+public class BookSearchIndexer {
+    private static final Logger log = LoggerFactory.getLogger(BookSearchIndexer.class);
+
+    // переиндексация при старте
+    public enum Mode {
+        // только если в индексе нет документов или их число не совпадает с числом книг в таблице
+        // (индекс в local-heap, новая база или изменения в обход приложения)
+        AUTO,
+        ALWAYS,
+        NEVER
+    }
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Mode mode;
+    private volatile boolean ready;
+
+    @Autowired
+    public BookSearchIndexer(EntityManagerFactory entityManagerFactory,
+                             @Value("${books.search.reindex_on_startup:auto}") String mode) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void reindexOnStartup() {
+        if (mode == Mode.ALWAYS || mode == Mode.AUTO && !upToDate()) reindex();
+        else ready = true;
+    }
+
+    // сравнивает число документов в индексе с числом книг, запросы к индексу и к базе занимают миллисекунды
+    private boolean upToDate() {
+        try (EntityManager entityManager = entityManagerFactory.createEntityManager()) {
+            long documents = Search.session(entityManager).search(Book.class)
+                    .where(f -> f.matchAll())
+                    .fetchTotalHitCount();
+            long books = entityManager.createQuery("select count(b) from Book b", Long.class).getSingleResult();
+
+            if (documents == books) return true;
+            log.info("В полнотекстовом индексе {} книг, в базе данных {}, индекс будет перестроен", documents, books);
+            return false;
+        }
+    }
+
+    // полная переиндексация
+    public void reindex() {
+        ready = false;
+        Search.mapping(entityManagerFactory).scope(Book.class).massIndexer()
+                .threadsToLoadObjects(2)
+                .start()
+                .whenComplete((result, error) -> {
+                    if (error != null) log.error("Не удалось перестроить полнотекстовый индекс книг", error);
+                    else {
+                        ready = true;
+                        log.info("Полнотекстовый индекс книг перестроен");
+                    }
+                });
+    }
+
+    // переиндексация только книг из диапазона id, например загруженных одним импортом
+    public void reindex(int fromId, int toId) {
+        MassIndexer indexer = Search.mapping(entityManagerFactory).scope(Book.class).massIndexer()
+                .purgeAllOnStart(false)
+                .mergeSegmentsOnFinish(false)
+                .threadsToLoadObjects(2);
+        indexer.type(Book.class).reindexOnly("e.id between :fromId and :toId")
+                .param("fromId", fromId)
+                .param("toId", toId);
+
+        indexer.start().whenComplete((result, error) -> {
+            if (error != null) log.error("Не удалось обновить полнотекстовый индекс для книг с id {}..{}", fromId, toId, error);
+            else log.info("Полнотекстовый индекс обновлен для книг с id {}..{}", fromId, toId);
+        });
+    }
+}
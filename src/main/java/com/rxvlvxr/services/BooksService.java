@@ -1,47 +1,163 @@
 package com.rxvlvxr.services;
 
+import com.rxvlvxr.config.BookSearchAnalysisConfigurer;
+import com.rxvlvxr.dto.BookCursor;
+import com.rxvlvxr.dto.BookListItem;
+import com.rxvlvxr.dto.BookSearchItem;
+import com.rxvlvxr.dto.BookSuggestion;
+import com.rxvlvxr.dto.KeysetPage;
+import com.rxvlvxr.dto.LoanEvent;
+import com.rxvlvxr.dto.LoanResult;
+import com.rxvlvxr.dto.SearchPage;
 import com.rxvlvxr.models.Book;
 import com.rxvlvxr.models.Person;
 import com.rxvlvxr.repositories.BooksRepository;
 import com.rxvlvxr.repositories.PeopleRepository;
-import org.hibernate.Hibernate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.hibernate.search.backend.lucene.LuceneBackend;
+import org.hibernate.search.engine.search.predicate.dsl.BooleanPredicateClausesStep;
+import org.hibernate.search.engine.search.query.SearchResult;
+import org.hibernate.search.mapper.orm.Search;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.thymeleaf.util.StringUtils;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Optional;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 // сервис для сущности book, здесь реализуется вся бизнес-логика
 @Service
 @Transactional(readOnly = true)
 public class BooksService {
+    // верхняя граница размера страницы, чтобы ни один запрос не выгружал всю таблицу book
+    public static final int MAX_BOOKS_PER_PAGE = 100;
+    // сколько результатов полнотекстового поиска можно пролистать: Lucene собирает offset + limit лучших документов,
+    // а номер страницы из запроса не должен переполнять offset
+    public static final int MAX_SEARCH_RESULTS = 10_000;
+    // число попыток выдачи или возврата книги при конфликте версий
+    private static final int MAX_LOAN_ATTEMPTS = 3;
+
     private final BooksRepository booksRepository;
     private final PeopleRepository peopleRepository;
+    private final BookPrefixIndex bookPrefixIndex;
+    private final CatalogVersion catalogVersion;
+    private final BookIndexCache bookIndexCache;
+    private final LoanEventLog loanEventLog;
+    // срок, на который выдается книга
+    private final int loanPeriodDays;
+    // число выдач и возвратов книг
+    private final Counter checkouts;
+    private final Counter returns;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     // внедряем зависимости
     @Autowired
-    public BooksService(BooksRepository booksRepository, PeopleRepository peopleRepository) {
+    public BooksService(BooksRepository booksRepository, PeopleRepository peopleRepository,
+                        BookPrefixIndex bookPrefixIndex, CatalogVersion catalogVersion,
+                        BookIndexCache bookIndexCache, LoanEventLog loanEventLog, MeterRegistry meterRegistry,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${books.loan_period_days:10}") int loanPeriodDays) {
         this.booksRepository = booksRepository;
         this.peopleRepository = peopleRepository;
+        this.bookPrefixIndex = bookPrefixIndex;
+        this.catalogVersion = catalogVersion;
+        this.bookIndexCache = bookIndexCache;
+        this.loanEventLog = loanEventLog;
+        this.loanPeriodDays = loanPeriodDays;
+        this.checkouts = Counter.builder("library.loans").tag("action", "checkout").register(meterRegistry);
+        this.returns = Counter.builder("library.loans").tag("action", "return").register(meterRegistry);
+        this.meterRegistry = meterRegistry;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     // возвращает список объекта Book в соответсвии с указанными параметрами пагинации и сортировки
-    public List<Book> findAll(Optional<Integer> page, Optional<Integer> booksPerPage, boolean sortByYear) {
+    // книги читаются в виде проекций (только нужные столбцы, без dirty checking)
+    public List<BookListItem> findAll(Optional<Integer> page, Optional<Integer> booksPerPage, boolean sortByYear) {
         // если параметр sortByYear == true, то будет производиться сортировка по году
         Sort sortCriteria = sortByYear ? Sort.by("year") : Sort.unsorted();
-        // если передан параметр, то он будет присвоен переменной itemsPerPage
-        // в ином случае переменной присвоится максимальное значение объекта Integer
-        int itemsPerPage = booksPerPage.orElse(Integer.MAX_VALUE);
+        // если передан параметр, то он будет присвоен переменной itemsPerPage (но не больше MAX_BOOKS_PER_PAGE)
+        int itemsPerPage = limitBooksPerPage(booksPerPage);
         // та же логика что и у переменной itemsPerPage
-        int pageCount = page.orElse(0);
+        int pageCount = Math.max(page.orElse(0), 0);
 
-        return booksRepository.findAll(PageRequest.of(pageCount, itemsPerPage, sortCriteria)).getContent();
+        return booksRepository.findAllBy(PageRequest.of(pageCount, itemsPerPage, sortCriteria)).getContent();
+    }
+
+    // keyset-пагинация: страница после курсора after или перед курсором before
+    // стоимость запроса не зависит от того, насколько далеко страница от начала каталога
+    public KeysetPage<BookListItem> findPage(Optional<String> after, Optional<String> before,
+                                     Optional<Integer> booksPerPage, boolean sortByYear) {
+        int itemsPerPage = limitBooksPerPage(booksPerPage);
+        // запрашиваем на одну строку больше, чтобы узнать есть ли следующая страница
+        Pageable limit = PageRequest.of(0, itemsPerPage + 1);
+        Optional<BookCursor> beforeCursor = before.flatMap(value -> BookCursor.decode(value, sortByYear));
+
+        if (beforeCursor.isPresent()) {
+            BookCursor cursor = beforeCursor.get();
+            List<BookListItem> books = new ArrayList<>(sortByYear
+                    ? booksRepository.findBeforeYearAndId(cursor.getYear(), cursor.getId(), limit)
+                    : booksRepository.findBeforeId(cursor.getId(), limit));
+            boolean hasPrev = books.size() > itemsPerPage;
+
+            if (hasPrev) books.remove(books.size() - 1);
+            // строки пришли в обратном порядке
+            Collections.reverse(books);
+
+            return new KeysetPage<>(books,
+                    books.isEmpty() ? null : BookCursor.of(books.get(books.size() - 1)).encode(sortByYear),
+                    hasPrev ? BookCursor.of(books.get(0)).encode(sortByYear) : null);
+        }
+
+        Optional<BookCursor> afterCursor = after.flatMap(value -> BookCursor.decode(value, sortByYear));
+        List<BookListItem> books;
+
+        if (afterCursor.isPresent()) {
+            BookCursor cursor = afterCursor.get();
+            books = sortByYear
+                    ? booksRepository.findAfterYearAndId(cursor.getYear(), cursor.getId(), limit)
+                    : booksRepository.findAfterId(cursor.getId(), limit);
+        } else {
+            Sort sortCriteria = sortByYear ? Sort.by("year", "id") : Sort.by("id");
+            books = booksRepository.findAllBy(PageRequest.of(0, itemsPerPage + 1, sortCriteria)).getContent();
+        }
+
+        books = new ArrayList<>(books);
+        boolean hasNext = books.size() > itemsPerPage;
+
+        if (hasNext) books.remove(books.size() - 1);
+
+        return new KeysetPage<>(books,
+                hasNext ? BookCursor.of(books.get(books.size() - 1)).encode(sortByYear) : null,
+                afterCursor.isPresent() && !books.isEmpty() ? BookCursor.of(books.get(0)).encode(sortByYear) : null);
+    }
+
+    // приводим запрошенный размер страницы к диапазону [1, MAX_BOOKS_PER_PAGE]
+    private int limitBooksPerPage(Optional<Integer> booksPerPage) {
+        return Math.min(Math.max(booksPerPage.orElse(MAX_BOOKS_PER_PAGE), 1), MAX_BOOKS_PER_PAGE);
     }
 
     // узнаем есть ли объект Book по переданному id
@@ -55,80 +171,223 @@ public class BooksService {
     @Transactional
     public void save(Book book) {
         booksRepository.save(book);
+        bookPrefixIndex.put(book);
+        catalogVersion.bump();
+        bookIndexCache.invalidate();
     }
 
     // редактируем данные в таблице book по id
+    // меняются поля управляемой книги (обычно из кэша второго уровня, без SELECT), а не сохраняется отсоединенная
+    // копия из формы: без merge держатель и сроки остаются как есть, а UPDATE (@DynamicUpdate) содержит только
+    // измененные столбцы и версию; если ничего не изменилось, UPDATE нет вовсе
+    // несуществующий id ничего не меняет, поэтому и кэши каталога не сбрасываются
     @Transactional
     public void update(int id, Book updatedBook) {
-        updatedBook.setId(id);
-        Optional<Book> optionalBook = booksRepository.findById(id);
-
-        optionalBook.ifPresent(book -> {
-            Person person = book.getPerson();
-
-            if (person != null) {
-                // делаем явные присваивания (для кэша Hibernate)
-                book.setPerson(null);
-                person.getBooks().remove(book);
-                updatedBook.setPerson(person);
-                updatedBook.setTakenAt(book.getTakenAt());
-            }
+        booksRepository.findById(id).ifPresent(book -> {
+            book.setTitle(updatedBook.getTitle());
+            book.setAuthor(updatedBook.getAuthor());
+            book.setYear(updatedBook.getYear());
+            bookPrefixIndex.put(book);
+            catalogVersion.bump();
+            bookIndexCache.invalidate();
         });
-
-        booksRepository.save(updatedBook);
     }
 
     @Transactional
     public void delete(int id) {
         booksRepository.deleteById(id);
+        bookPrefixIndex.remove(id);
+        catalogVersion.bump();
+        bookIndexCache.invalidate();
+    }
+
+    // книга вместе с держателем одним запросом
+    public Optional<Book> findWithPersonById(int id) {
+        return booksRepository.findWithPersonById(id);
     }
 
     // получаем объект типа Person по id сущности book
     public Optional<Person> findPersonByBookId(int id) {
-        final Person[] person = {null};
-        Optional<Book> optionalBook = booksRepository.findById(id);
+        return booksRepository.findWithPersonById(id).map(Book::getPerson);
+    }
 
-        optionalBook.ifPresent(book -> {
-            // делаем инициализации Hibernate объекта, чтобы он перешел из transient в состояние persistent
-            Hibernate.initialize(book.getPerson());
-            person[0] = book.getPerson();
-        });
+    // выдача книги человеку без блокировок: книга читается (обычно из кэша второго уровня), а выдача - один
+    // условный UPDATE person_id, taken_at, due_at с проверкой версии (@Version, @DynamicUpdate)
+    // если книгу за это время изменил другой запрос, транзакция откатывается и выдача повторяется заново
+    // на повторной попытке уже выданная книга дает результат ALREADY_TAKEN
+    // событие журнала выдач ставится в очередь после коммита, см. LoanEventLog.record
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public LoanResult assignToPerson(int bookId, int personId) {
+        AtomicReference<LoanEvent> event = new AtomicReference<>();
+        LoanResult result = loanEventLog.record(() -> withRetry(() -> checkout(bookId, personId, event)),
+                loanResult -> loanResult.isOk() ? event.get() : null);
 
-        return Optional.ofNullable(person[0]);
+        if (result.isOk()) checkouts.increment();
+        else meterRegistry.counter("library.loans.rejected", "action", "checkout", "result", result.name()).increment();
+
+        return result;
     }
 
-    @Transactional
-    public void assignToPerson(int bookId, int personId) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public LoanResult release(int id) {
+        AtomicReference<LoanEvent> event = new AtomicReference<>();
+        LoanResult result = loanEventLog.record(() -> withRetry(() -> checkin(id, event)),
+                loanResult -> loanResult.isOk() ? event.get() : null);
+
+        if (result.isOk()) returns.increment();
+        else meterRegistry.counter("library.loans.rejected", "action", "return", "result", result.name()).increment();
+
+        return result;
+    }
+
+    // event - событие для журнала, если попытка успешна (его значение берется из последней попытки)
+    private LoanResult checkout(int bookId, int personId, AtomicReference<LoanEvent> event) {
         Optional<Book> optionalBook = booksRepository.findById(bookId);
+
+        if (optionalBook.isEmpty()) return LoanResult.BOOK_NOT_FOUND;
+
+        Book book = optionalBook.get();
+
+        if (book.getPerson() != null) return LoanResult.ALREADY_TAKEN;
+
         Optional<Person> optionalPerson = peopleRepository.findById(personId);
 
-        optionalBook.ifPresent(book -> book.setPerson(optionalPerson.orElse(null)));
-        optionalBook.ifPresent(book -> book.setTakenAt(new Date()));
-        optionalPerson.ifPresent(person -> person.getBooks().add(optionalBook.orElse(null)));
+        if (optionalPerson.isEmpty()) return LoanResult.PERSON_NOT_FOUND;
+
+        Person person = optionalPerson.get();
+        Date takenAt = new Date();
+        Date dueAt = Date.from(takenAt.toInstant().plus(loanPeriodDays, ChronoUnit.DAYS));
+
+        // список книг человека не трогаем: его кэш сбрасывается сам (auto_evict_collection_cache)
+        book.setPerson(person);
+        book.setTakenAt(takenAt);
+        book.setDueAt(dueAt);
+        event.set(new LoanEvent(LoanEvent.Type.CHECKOUT, bookId, personId, takenAt, dueAt));
+        catalogVersion.bump();
+        bookIndexCache.invalidate();
+
+        return LoanResult.OK;
     }
 
-    @Transactional
-    public void release(int id) {
+    private LoanResult checkin(int id, AtomicReference<LoanEvent> event) {
         Optional<Book> optionalBook = booksRepository.findById(id);
 
-        optionalBook.ifPresent(book -> {
-            Person person = book.getPerson();
+        if (optionalBook.isEmpty()) return LoanResult.BOOK_NOT_FOUND;
 
-            book.setPerson(null);
-            book.setTakenAt(null);
-            book.setExpired(false);
-            person.getBooks().remove(book);
-        });
+        Book book = optionalBook.get();
+        Person person = book.getPerson();
+
+        if (person == null) return LoanResult.ALREADY_FREE;
+
+        // держатель - прокси, id берется без загрузки человека и его списка книг
+        event.set(new LoanEvent(LoanEvent.Type.RETURN, id, person.getId(), new Date(), book.getDueAt()));
+        book.setPerson(null);
+        book.setTakenAt(null);
+        book.setDueAt(null);
+        catalogVersion.bump();
+        bookIndexCache.invalidate();
+
+        return LoanResult.OK;
+    }
+
+    // каждая попытка выполняется в отдельной транзакции, конфликт версий обнаруживается при коммите
+    private LoanResult withRetry(Supplier<LoanResult> action) {
+        for (int attempt = 1; attempt <= MAX_LOAN_ATTEMPTS; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> action.get());
+            } catch (OptimisticLockingFailureException e) {
+                meterRegistry.counter("library.loans.retries").increment();
+            }
+        }
+
+        return LoanResult.CONFLICT;
+    }
+
+    // отчет о просроченных книгах по всей библиотеке, отсортированный по сроку возврата
+    public Page<Book> findOverdue(Optional<Integer> page, Optional<Integer> booksPerPage) {
+        return booksRepository.findOverdue(new Date(),
+                PageRequest.of(Math.max(page.orElse(0), 0), limitBooksPerPage(booksPerPage)));
+    }
+
+    // автодополнение по префиксу слова из названия или автора, отвечает из памяти без запроса к базе данных
+    public List<BookSuggestion> autocomplete(String query, int limit) {
+        return bookPrefixIndex.search(query, Math.min(limit, MAX_BOOKS_PER_PAGE));
+    }
+
+    // полнотекстовый поиск по названию и автору с ранжированием по релевантности
+    // и допуском опечаток (до двух правок в слове, первая буква должна совпадать)
+    public SearchPage<BookSearchItem> search(String query, int page, Optional<Integer> booksPerPage) {
+        int itemsPerPage = limitBooksPerPage(booksPerPage);
+        int pageNumber = Math.min(Math.max(page, 0), (MAX_SEARCH_RESULTS - 1) / itemsPerPage);
+
+        if (query == null || query.isBlank())
+            return new SearchPage<>(Collections.emptyList(), 0, pageNumber, itemsPerPage);
+
+        List<String> words = analyze(query);
+
+        // из индекса берем только id найденных книг в порядке релевантности
+        SearchResult<Integer> result = Search.session(entityManager)
+                .search(Book.class)
+                .select(f -> f.id(Integer.class))
+                .where(f -> {
+                    BooleanPredicateClausesStep<?> bool = f.bool()
+                            // точное совпадение слов ранжируется выше нечеткого
+                            .should(f.match().fields("title", "author").matching(query).boost(2.0f))
+                            .should(f.match().fields("title", "author").matching(query).fuzzy(2, 1));
+
+                    // каждое слово запроса как начало слова в названии или авторе ("море стр" -> море* и стр*)
+                    if (!words.isEmpty()) {
+                        BooleanPredicateClausesStep<?> prefixes = f.bool();
+                        words.forEach(word -> prefixes.must(f.wildcard().fields("title", "author")
+                                .matching(escapeWildcard(word) + "*")));
+                        bool.should(prefixes);
+                    }
+
+                    return bool;
+                })
+                .fetch(pageNumber * itemsPerPage, itemsPerPage);
+
+        // строки страницы выбираем одним запросом в виде проекций и восстанавливаем порядок релевантности
+        List<Integer> ids = result.hits();
+        Map<Integer, BookSearchItem> items = new HashMap<>();
+        booksRepository.findSearchItemsByIdIn(ids).forEach(item -> items.put(item.getId(), item));
+
+        List<BookSearchItem> books = new ArrayList<>(ids.size());
+        ids.stream().map(items::get).filter(Objects::nonNull).forEach(books::add);
+
+        return new SearchPage<>(books, Math.min(result.total().hitCount(), MAX_SEARCH_RESULTS), pageNumber, itemsPerPage);
+    }
+
+    // слова запроса после анализатора индекса (нижний регистр, ё -> е, без диакритики и знаков препинания)
+    private List<String> analyze(String query) {
+        Analyzer analyzer = Search.mapping(entityManager.getEntityManagerFactory()).backend()
+                .unwrap(LuceneBackend.class)
+                .analyzer(BookSearchAnalysisConfigurer.BOOK_TEXT)
+                .orElseThrow();
+
+        List<String> words = new ArrayList<>();
+        try (TokenStream tokens = analyzer.tokenStream("title", query)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) words.add(term.toString());
+            tokens.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return words;
+    }
+
+    // символы шаблона в слове ищутся как обычные символы
+    private static String escapeWildcard(String word) {
+        return word.replace("\\", "\\\\").replace("*", "\\*").replace("?", "\\?");
     }
 
     // возвращает список объектов Book, которые соответствуют параметру title
     // (ищем соответствие этого параметра с первыми буквами столбца title в сущности book)
-    public List<Book> findByTitleStartingWith(String title) {
+    public List<BookSearchItem> findByTitleStartingWith(String title) {
         // если передано пустое значение, то присвоится пустой список, в ином случае будет поиск по первым буквам названия книги
-        List<Book> books = title.isEmpty() ? new ArrayList<>() : booksRepository.findByTitleStartingWith(StringUtils.capitalize(title.toLowerCase()));
-        // явно инициализируем Hibernate объект
-        books.stream().map(Book::getPerson).forEach(Hibernate::initialize);
-
-        return books;
+        // имя держателя выбирается тем же запросом
+        return title.isEmpty() ? new ArrayList<>() : booksRepository.findByTitleStartingWith(StringUtils.capitalize(title.toLowerCase()));
     }
 }
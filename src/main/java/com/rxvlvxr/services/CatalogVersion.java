@@ -0,0 +1,55 @@
+package com.rxvlvxr.services;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// версия данных каталога (книги и люди), по которой страницам выставляются ETag и Last-Modified
+// увеличивается методами сервисов, изменяющими данные, только после коммита транзакции,
+// чтобы клиент не закэшировал под новой версией еще не закоммиченные данные
+// версия хранится в памяти процесса: при старте берется текущее время, поэтому ETag не повторяются после перезапуска
+@Component
+public class CatalogVersion {
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+    // время последнего изменения с точностью до секунды (как в заголовке Last-Modified), строго возрастает
+    private final AtomicLong lastModified = new AtomicLong(System.currentTimeMillis() / 1000 * 1000);
+    // вызываются после коммита изменения до смены версии: ReplicaDataSource запоминает позицию WAL,
+    // иначе страница с отстающей реплики попала бы в кэш под новой версией
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public long getLastModified() {
+        return lastModified.get();
+    }
+
+    public void onChange(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    // слушатели вызываются раньше смены версии: кто увидел новую версию, тот увидит и их результат
+    public void bump() {
+        afterCommit(() -> {
+            listeners.forEach(Runnable::run);
+            version.incrementAndGet();
+            lastModified.updateAndGet(previous -> Math.max(System.currentTimeMillis() / 1000 * 1000, previous + 1000));
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        else action.run();
+    }
+}
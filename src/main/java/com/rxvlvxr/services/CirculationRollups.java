@@ -0,0 +1,269 @@
+package com.rxvlvxr.services;
+
+import com.rxvlvxr.dto.LoanEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// сводные таблицы для страницы /stats: выдачи по книгам (loan_stats_book), по году издания (loan_stats_year),
+// текущие читатели (loan_stats_person, только люди с книгами на руках) и общие итоги (одна строка loan_stats_total)
+// таблицы обновляются приращениями в той же транзакции, что и пачка событий журнала выдач (см. LoanEventLog),
+// поэтому приращения фиксируются вместе с событиями, а выдача книги не ждет обновления сводок и не блокирует строку итогов
+// периодическая сверка пересчитывает текущее состояние (кто и сколько книг держит, просрочки) по таблице book,
+// исправляя расхождения из-за удаления выданных книг, смены года издания и отброшенных событий;
+// ее запускает поток записи журнала (см. LoanEventLog.reconcile), чтобы снимок book не разошелся с примененными пачками
+@Component
+public class CirculationRollups {
+    private final Timer reconciliations;
+
+    @Autowired
+    public CirculationRollups(MeterRegistry meterRegistry) {
+        this.reconciliations = Timer.builder("stats.reconcile").description("Сверка сводных таблиц").register(meterRegistry);
+    }
+
+    // приращения по пачке событий; вызывается в транзакции записи пачки, до коммита
+    // события просрочки сводки не меняют: число просроченных книг пересчитывает countOverdue
+    void apply(Connection connection, List<LoanEvent> events) throws SQLException {
+        Map<Integer, Long> bookCheckouts = new HashMap<>();
+        Map<Integer, Integer> personDeltas = new TreeMap<>();
+        Map<Integer, Integer> bookDeltas = new HashMap<>();
+        long checkouts = 0;
+        int activeDelta = 0;
+
+        for (LoanEvent event : events) {
+            int delta;
+            if (event.getType() == LoanEvent.Type.CHECKOUT) {
+                bookCheckouts.merge(event.getBookId(), 1L, Long::sum);
+                checkouts++;
+                delta = 1;
+            } else if (event.getType() == LoanEvent.Type.RETURN) {
+                delta = -1;
+            } else continue;
+
+            personDeltas.merge(event.getPersonId(), delta, Integer::sum);
+            bookDeltas.merge(event.getBookId(), delta, Integer::sum);
+            activeDelta += delta;
+        }
+
+        if (personDeltas.isEmpty()) return;
+
+        // строка итогов блокируется первой и в том же порядке, что и при сверке, поэтому пачки разных экземпляров
+        // приложения и сверка выполняются по очереди и не взаимоблокируются
+        lockTotals(connection);
+
+        int borrowersDelta = applyPersonDeltas(connection, personDeltas);
+
+        incrementBooks(connection, bookCheckouts);
+
+        // выдачи и книги на руках по году издания
+        Map<Integer, Integer> years = findYears(connection, bookDeltas.keySet());
+        Map<Integer, long[]> yearDeltas = new HashMap<>();
+        bookDeltas.forEach((bookId, delta) -> {
+            Integer year = years.get(bookId);
+            // книгу уже удалили, год неизвестен - поправит сверка
+            if (year == null) return;
+
+            long[] deltas = yearDeltas.computeIfAbsent(year, key -> new long[2]);
+            deltas[0] += bookCheckouts.getOrDefault(bookId, 0L);
+            deltas[1] += delta;
+        });
+        for (Map.Entry<Integer, long[]> entry : yearDeltas.entrySet())
+            incrementYear(connection, entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+
+        try (PreparedStatement statement = connection.prepareStatement("update loan_stats_total set " +
+                "checkouts = checkouts + ?, active_loans = active_loans + ?, active_borrowers = active_borrowers + ? " +
+                "where id = 1")) {
+            statement.setLong(1, checkouts);
+            statement.setInt(2, activeDelta);
+            statement.setInt(3, borrowersDelta);
+            statement.executeUpdate();
+        }
+    }
+
+    // число книг на руках у каждого читателя из пачки; возвращает изменение числа читателей с книгами
+    private int applyPersonDeltas(Connection connection, Map<Integer, Integer> personDeltas) throws SQLException {
+        Map<Integer, Integer> active = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select person_id, active from loan_stats_person where person_id in (" +
+                        placeholders(personDeltas.size()) + ") order by person_id for update")) {
+            int index = 1;
+            for (Integer personId : personDeltas.keySet()) statement.setInt(index++, personId);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) active.put(resultSet.getInt(1), resultSet.getInt(2));
+            }
+        }
+
+        int borrowersDelta = 0;
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into loan_stats_person (active, person_id) values (?, ?)");
+             PreparedStatement update = connection.prepareStatement(
+                     "update loan_stats_person set active = ? where person_id = ?");
+             PreparedStatement delete = connection.prepareStatement(
+                     "delete from loan_stats_person where person_id = ?")) {
+            for (Map.Entry<Integer, Integer> entry : personDeltas.entrySet()) {
+                Integer before = active.get(entry.getKey());
+                int after = (before == null ? 0 : before) + entry.getValue();
+
+                if (before == null && after > 0) {
+                    insert.setInt(1, after);
+                    insert.setInt(2, entry.getKey());
+                    insert.addBatch();
+                    borrowersDelta++;
+                } else if (before != null && after <= 0) {
+                    // строки есть только у тех, у кого книги на руках, поэтому таблица не растет вместе с person
+                    delete.setInt(1, entry.getKey());
+                    delete.addBatch();
+                    borrowersDelta--;
+                } else if (before != null) {
+                    update.setInt(1, after);
+                    update.setInt(2, entry.getKey());
+                    update.addBatch();
+                }
+            }
+            insert.executeBatch();
+            update.executeBatch();
+            delete.executeBatch();
+        }
+
+        return borrowersDelta;
+    }
+
+    // число просроченных книг, пересчитывается после каждой проверки просрочек (диапазон индекса book_due_at_idx)
+    void countOverdue(Connection connection, Timestamp now) throws SQLException {
+        lockTotals(connection);
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "update loan_stats_total set overdue_loans = (select count(*) from book where due_at <= ?) where id = 1")) {
+            statement.setTimestamp(1, now);
+            statement.executeUpdate();
+        }
+    }
+
+    // пересчет текущего состояния по таблице book в транзакции connection (проход только по выданным книгам)
+    // строка итогов уже заблокирована, а снимок транзакции содержит ровно те выдачи, события которых применены
+    // счетчики выдач за все время (loan_stats_book.checkouts и loan_stats_year.checkouts) пишутся в одной транзакции
+    // с журналом и не пересчитываются, удаляются только строки удаленных книг
+    void reconcile(Connection connection) throws SQLException {
+        long started = System.nanoTime();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("delete from loan_stats_person");
+            statement.executeUpdate("insert into loan_stats_person (person_id, active) " +
+                    "select person_id, count(*) from book where person_id is not null group by person_id");
+
+            statement.executeUpdate("update loan_stats_year set active = coalesce((select count(*) from book b " +
+                    "where b.person_id is not null and b.year = loan_stats_year.year), 0)");
+            statement.executeUpdate("insert into loan_stats_year (year, checkouts, active) " +
+                    "select b.year, 0, count(*) from book b where b.person_id is not null " +
+                    "and not exists (select 1 from loan_stats_year y where y.year = b.year) group by b.year");
+
+            statement.executeUpdate("delete from loan_stats_book s where not exists (select 1 from book b where b.id = s.book_id)");
+
+            try (PreparedStatement totals = connection.prepareStatement("update loan_stats_total set " +
+                    "active_loans = (select count(*) from book where person_id is not null), " +
+                    "active_borrowers = (select count(*) from loan_stats_person), " +
+                    "overdue_loans = (select count(*) from book where due_at <= ?), reconciled_at = ? where id = 1")) {
+                totals.setTimestamp(1, now);
+                totals.setTimestamp(2, now);
+                totals.executeUpdate();
+            }
+        }
+
+        reconciliations.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    static void lockTotals(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet ignored = statement.executeQuery("select id from loan_stats_total where id = 1 for update")) {
+            // блокировка держится до конца транзакции
+        }
+    }
+
+    // выдачи по книгам: пачка update, а для книг, у которых строки еще нет, - пачка insert
+    private static void incrementBooks(Connection connection, Map<Integer, Long> bookCheckouts) throws SQLException {
+        if (bookCheckouts.isEmpty()) return;
+
+        List<Map.Entry<Integer, Long>> entries = new ArrayList<>(bookCheckouts.entrySet());
+        int[] updated;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "update loan_stats_book set checkouts = checkouts + ? where book_id = ?")) {
+            for (Map.Entry<Integer, Long> entry : entries) {
+                statement.setLong(1, entry.getValue());
+                statement.setInt(2, entry.getKey());
+                statement.addBatch();
+            }
+            updated = statement.executeBatch();
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "insert into loan_stats_book (book_id, checkouts) values (?, ?)")) {
+            boolean inserts = false;
+            for (int i = 0; i < entries.size(); i++) {
+                if (updated[i] > 0) continue;
+
+                statement.setInt(1, entries.get(i).getKey());
+                statement.setLong(2, entries.get(i).getValue());
+                statement.addBatch();
+                inserts = true;
+            }
+            if (inserts) statement.executeBatch();
+        }
+    }
+
+    private static void incrementYear(Connection connection, int year, long checkouts, long active) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "update loan_stats_year set checkouts = checkouts + ?, active = active + ? where year = ?")) {
+            statement.setLong(1, checkouts);
+            statement.setLong(2, active);
+            statement.setInt(3, year);
+            if (statement.executeUpdate() > 0) return;
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "insert into loan_stats_year (year, checkouts, active) values (?, ?, ?)")) {
+            statement.setInt(1, year);
+            statement.setLong(2, checkouts);
+            statement.setLong(3, Math.max(active, 0));
+            statement.executeUpdate();
+        }
+    }
+
+    private static Map<Integer, Integer> findYears(Connection connection, Collection<Integer> bookIds) throws SQLException {
+        if (bookIds.isEmpty()) return Collections.emptyMap();
+
+        Map<Integer, Integer> years = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select id, year from book where id in (" + placeholders(bookIds.size()) + ")")) {
+            int index = 1;
+            for (Integer bookId : bookIds) statement.setInt(index++, bookId);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) years.put(resultSet.getInt(1), resultSet.getInt(2));
+            }
+        }
+
+        return years;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
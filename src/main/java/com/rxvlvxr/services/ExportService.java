@@ -0,0 +1,93 @@
+package com.rxvlvxr.services;
+
+import com.rxvlvxr.models.Book;
+import com.rxvlvxr.models.Person;
+import com.rxvlvxr.repositories.BooksRepository;
+import com.rxvlvxr.repositories.PeopleRepository;
+import com.rxvlvxr.util.RowWriter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+// выгрузка каталога, людей и выдач книг с постоянным потреблением памяти:
+// строки читаются через серверный курсор и сразу пишутся в поток ответа,
+// persistence context периодически очищается, чтобы в нем не накапливались прочитанные сущности
+@Service
+@Lazy
+@Transactional(readOnly = true)
+public class ExportService {
+    // через сколько строк очищать persistence context и сбрасывать буфер ответа
+    private static final int CLEAR_EVERY = 1000;
+    // даты выдачи в UTC, как в JSON API (ApiService)
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_INSTANT;
+
+    private final BooksRepository booksRepository;
+    private final PeopleRepository peopleRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public ExportService(BooksRepository booksRepository, PeopleRepository peopleRepository) {
+        this.booksRepository = booksRepository;
+        this.peopleRepository = peopleRepository;
+    }
+
+    public void exportBooks(Writer out, RowWriter.Format format) throws IOException {
+        try (Stream<Book> books = booksRepository.streamAll();
+             RowWriter writer = RowWriter.of(format, out, "id", "title", "author", "year")) {
+            write(books, writer, book -> writer.row(book.getId(), book.getTitle(), book.getAuthor(), book.getYear()));
+        }
+    }
+
+    public void exportPeople(Writer out, RowWriter.Format format) throws IOException {
+        try (Stream<Person> people = peopleRepository.streamAll();
+             RowWriter writer = RowWriter.of(format, out, "id", "name", "birth_year")) {
+            write(people, writer, person -> writer.row(person.getId(), person.getName(), person.getBirthYear()));
+        }
+    }
+
+    public void exportLoans(Writer out, RowWriter.Format format) throws IOException {
+        try (Stream<Book> loans = booksRepository.streamLoans();
+             RowWriter writer = RowWriter.of(format, out,
+                     "book_id", "title", "person_id", "name", "taken_at", "due_at", "expired")) {
+            write(loans, writer, book -> writer.row(book.getId(), book.getTitle(),
+                    book.getPerson().getId(), book.getPerson().getName(),
+                    format(book.getTakenAt()), format(book.getDueAt()), book.isExpired()));
+        }
+    }
+
+    private <T> void write(Stream<T> rows, RowWriter writer, RowAction<T> action) throws IOException {
+        Iterator<T> iterator = rows.iterator();
+        long count = 0;
+
+        while (iterator.hasNext()) {
+            action.write(iterator.next());
+
+            if (++count % CLEAR_EVERY == 0) {
+                entityManager.clear();
+                writer.flush();
+            }
+        }
+    }
+
+    private static String format(Date date) {
+        return date == null ? null : DATE_FORMAT.format(Instant.ofEpochMilli(date.getTime()));
+    }
+
+    @FunctionalInterface
+    private interface RowAction<T> {
+        void write(T row) throws IOException;
+    }
+}
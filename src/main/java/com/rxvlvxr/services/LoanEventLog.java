@@ -0,0 +1,432 @@
+package com.rxvlvxr.services;
+
+import com.rxvlvxr.dto.LoanEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// журнал выдач, возвратов и просрочек книг (таблица loan_event, только добавление строк, секции по месяцам)
+// события кладутся в ограниченную очередь после коммита выдачи или возврата, отдельный поток записывает их
+// пачками (JDBC batch, одна транзакция на пачку), поэтому выдача книги не ждет записи в журнал
+// и не замедляется по мере роста журнала: вставка идет только в секцию текущего месяца
+@Service
+public class LoanEventLog {
+    private static final Logger log = LoggerFactory.getLogger(LoanEventLog.class);
+    private static final String INSERT =
+            "insert into loan_event (type, book_id, person_id, occurred_at, due_at) values (?, ?, ?, ?, ?)";
+    // как часто поток записи просыпается без новых событий (проверка просрочек и остановки)
+    private static final long POLL_MILLIS = 1000;
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+    // ключ advisory-блокировки проверки просрочек
+    private static final long OVERDUE_LOCK = 0x6c6f616e5f657674L;
+
+    // режим надежности записи журнала
+    public enum Durability {
+        // запрос не ждет записи события; при падении приложения теряются события из очереди,
+        // при падении PostgreSQL - последние доли секунды журнала (пачки пишутся с synchronous_commit = off)
+        ASYNC,
+        // запрос ждет коммита пачки со своим событием (групповой коммит: одна фиксация на всю пачку);
+        // выдача и событие фиксируются разными транзакциями, при падении между ними событие теряется
+        SYNC
+    }
+
+    private final DataSource dataSource;
+    private final CirculationRollups circulationRollups;
+    private final BlockingQueue<Pending> queue;
+    private final Durability durability;
+    private final int batchSize;
+    private final long offerTimeoutMillis;
+    private final long syncTimeoutMillis;
+    private final long overdueCheckMillis;
+    private final long reconcileMillis;
+    // выдача или возврат держат блокировку на чтение от начала транзакции до постановки события в очередь,
+    // сверка сводок берет ее на запись (см. reconcile)
+    private final ReadWriteLock commits = new ReentrantReadWriteLock();
+    private final Thread writer = new Thread(this::run, "loan-event-writer");
+    private volatile boolean running;
+
+    // состояние потока записи
+    // месяцы, для которых секция loan_event уже создана
+    private final Set<YearMonth> partitions = new HashSet<>();
+    // события просрочки записаны для всех книг со сроком возврата до этого момента (по последней проверке
+    // этого экземпляра; другие экземпляры продвигают начало проверки через журнал)
+    private Timestamp overdueWatermark;
+    private long nextOverdueCheck;
+    private long nextReconcile;
+
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter failed;
+    private final Timer flushes;
+
+    @Autowired
+    public LoanEventLog(DataSource dataSource, CirculationRollups circulationRollups, MeterRegistry meterRegistry,
+                        @Value("${loans.events.queue_capacity:10000}") int queueCapacity,
+                        @Value("${loans.events.batch_size:500}") int batchSize,
+                        @Value("${loans.events.durability:async}") String durability,
+                        @Value("${loans.events.offer_timeout_ms:50}") long offerTimeoutMillis,
+                        @Value("${loans.events.sync_timeout_ms:5000}") long syncTimeoutMillis,
+                        @Value("${loans.events.overdue_check_ms:60000}") long overdueCheckMillis,
+                        @Value("${stats.reconcile_ms:3600000}") long reconcileMillis) {
+        this.dataSource = dataSource;
+        this.circulationRollups = circulationRollups;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.durability = Durability.valueOf(durability.trim().toUpperCase(Locale.ROOT));
+        this.batchSize = batchSize;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.syncTimeoutMillis = syncTimeoutMillis;
+        this.overdueCheckMillis = overdueCheckMillis;
+        this.reconcileMillis = reconcileMillis;
+
+        Gauge.builder("loan_events.queue", queue, BlockingQueue::size)
+                .description("События журнала выдач, ожидающие записи").register(meterRegistry);
+        this.written = Counter.builder("loan_events").tag("result", "written").register(meterRegistry);
+        this.dropped = Counter.builder("loan_events").tag("result", "dropped").register(meterRegistry);
+        this.failed = Counter.builder("loan_events").tag("result", "failed").register(meterRegistry);
+        this.flushes = Timer.builder("loan_events.flush").description("Запись пачки событий").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        nextReconcile = System.currentTimeMillis() + reconcileMillis;
+        running = true;
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // при остановке приложения записываем все, что осталось в очереди
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    // выполняет выдачу или возврат (loan, со своими транзакциями) и ставит в очередь событие event(результат),
+    // если оно не null; событие ставится после коммита, поэтому в журнал не попадают откатившиеся попытки
+    // если очередь переполнена дольше offer_timeout_ms (база данных не успевает или недоступна), событие
+    // отбрасывается (счетчик loan_events{result=dropped}), а не задерживает выдачу книги
+    public <T> T record(Supplier<T> loan, Function<T, LoanEvent> event) {
+        T result;
+        Pending pending = null;
+
+        commits.readLock().lock();
+        try {
+            result = loan.get();
+            LoanEvent loanEvent = event.apply(result);
+
+            if (loanEvent != null) pending = enqueue(loanEvent);
+        } finally {
+            commits.readLock().unlock();
+        }
+
+        // запись пачки ждем уже без блокировки: ее может ждать сверка на потоке записи
+        if (pending != null && pending.written != null) {
+            try {
+                pending.written.get(syncTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                // выдача уже зафиксирована, поэтому ошибка журнала не отменяет ее
+                log.warn("Событие {} книги {} не подтверждено журналом: {}",
+                        pending.event.getType(), pending.event.getBookId(), e.toString());
+            }
+        }
+
+        return result;
+    }
+
+    private Pending enqueue(LoanEvent event) {
+        Pending pending = new Pending(event, durability == Durability.SYNC ? new CompletableFuture<>() : null);
+
+        try {
+            if (running && queue.offer(pending, offerTimeoutMillis, TimeUnit.MILLISECONDS)) return pending;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        dropped.increment();
+        return null;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+                if (first != null) {
+                    // пачка - все, что накопилось за время записи предыдущей, но не больше batch_size
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    write(batch);
+                    batch.clear();
+                }
+                if (running && overdueCheckMillis > 0 && System.currentTimeMillis() >= nextOverdueCheck) {
+                    nextOverdueCheck = System.currentTimeMillis() + overdueCheckMillis;
+                    checkOverdue();
+                }
+                if (running && reconcileMillis > 0 && System.currentTimeMillis() >= nextReconcile) {
+                    reconcile();
+                    nextReconcile = System.currentTimeMillis() + reconcileMillis;
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                log.error("Журнал выдач: ошибка потока записи", e);
+            }
+        }
+    }
+
+    private void write(List<Pending> batch) throws InterruptedException {
+        for (Pending pending : batch) createPartition(YearMonth.from(toLocalDate(pending.event.getOccurredAt())));
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                flushes.recordCallable(() -> insert(batch));
+                written.increment(batch.size());
+                batch.stream().filter(pending -> pending.written != null).forEach(pending -> pending.written.complete(null));
+                return;
+            } catch (Exception e) {
+                if (attempt < MAX_WRITE_ATTEMPTS) {
+                    // база данных перезапускается или переключается на реплику, пробуем еще раз чуть позже
+                    Thread.sleep(attempt * POLL_MILLIS);
+                    continue;
+                }
+
+                log.error("Журнал выдач: не удалось записать {} событий", batch.size(), e);
+                failed.increment(batch.size());
+                batch.stream().filter(pending -> pending.written != null)
+                        .forEach(pending -> pending.written.completeExceptionally(e));
+                return;
+            }
+        }
+    }
+
+    private Void insert(List<Pending> batch) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+
+            if (durability == Durability.ASYNC && isPostgres(connection)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("set local synchronous_commit = off");
+                }
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                for (Pending pending : batch) {
+                    LoanEvent event = pending.event;
+
+                    statement.setString(1, event.getType().getCode());
+                    statement.setInt(2, event.getBookId());
+                    statement.setInt(3, event.getPersonId());
+                    statement.setTimestamp(4, timestamp(event.getOccurredAt()));
+                    statement.setTimestamp(5, event.getDueAt() == null ? null : timestamp(event.getDueAt()));
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                // сводки для /stats меняются вместе с журналом
+                circulationRollups.apply(connection, batch.stream().map(pending -> pending.event).toList());
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+
+        return null;
+    }
+
+    // сверка сводок с таблицей book (CirculationRollups.reconcile) на потоке записи, поэтому пачки в это время
+    // не применяются; пока новые выдачи не фиксируются, очередь дописывается и фиксируется снимок транзакции сверки
+    // (REPEATABLE READ): каждая выдача этого экземпляра либо есть в снимке и ее событие уже применено, либо ее нет
+    // в снимке и событие применится после сверки; выдачи других экземпляров так не согласуются, их расхождение
+    // исправит следующая сверка
+    private void reconcile() throws InterruptedException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+
+            try {
+                commits.writeLock().lock();
+                try {
+                    List<Pending> batch = new ArrayList<>(batchSize);
+                    while (queue.drainTo(batch, batchSize) > 0) {
+                        write(batch);
+                        batch.clear();
+                    }
+                    // первый запрос устанавливает снимок транзакции
+                    CirculationRollups.lockTotals(connection);
+                } finally {
+                    commits.writeLock().unlock();
+                }
+
+                circulationRollups.reconcile(connection);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            }
+        } catch (SQLException e) {
+            log.warn("Сверка сводных таблиц не выполнена: {}", e.getMessage());
+        }
+    }
+
+    // секции создаются заранее (текущий и следующий месяц): CREATE TABLE ... PARTITION OF берет эксклюзивную
+    // блокировку loan_event, и лучше взять ее за месяц до первой вставки, чем на стыке месяцев
+    private void createPartition(YearMonth month) {
+        for (YearMonth partition : List.of(month, month.plusMonths(1))) {
+            if (partitions.contains(partition)) continue;
+
+            String sql = String.format("create table if not exists loan_event_%d_%02d partition of loan_event " +
+                            "for values from ('%s') to ('%s')", partition.getYear(), partition.getMonthValue(),
+                    partition.atDay(1), partition.plusMonths(1).atDay(1));
+
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                // секционированная таблица есть только в PostgreSQL (в H2 для проверок - обычная)
+                if (isPostgres(connection)) statement.execute(sql);
+                partitions.add(partition);
+            } catch (SQLException e) {
+                log.warn("Журнал выдач: секция {} не создана: {}", partition, e.getMessage());
+                // класс 42 - секцию одновременно создал другой экземпляр приложения или таблица loan_event
+                // не секционирована, повторять бесполезно; остальные ошибки (нет соединения) - повторим со следующей пачкой
+                if (e.getSQLState() != null && e.getSQLState().startsWith("42")) partitions.add(partition);
+            }
+        }
+    }
+
+    // события просрочки: книги, срок возврата которых наступил с прошлой проверки (по индексу book_due_at_idx)
+    // время события - сам срок возврата; проверку выполняет только один экземпляр приложения за раз
+    // (advisory-блокировка PostgreSQL), остальные ее пропускают; начало проверки каждый раз читается из журнала,
+    // потому что его мог продвинуть другой экземпляр или предыдущий запуск приложения
+    private void checkOverdue() throws InterruptedException {
+        Date now = new Date();
+
+        try (Connection connection = dataSource.getConnection()) {
+            boolean postgres = isPostgres(connection);
+            // проверку сейчас выполняет другой экземпляр
+            if (postgres && !advisoryLock(connection, "pg_try_advisory_lock")) return;
+
+            try {
+                checkOverdue(connection, now);
+            } finally {
+                if (postgres) advisoryLock(connection, "pg_advisory_unlock");
+            }
+        } catch (SQLException e) {
+            log.warn("Журнал выдач: проверка просрочек не выполнена: {}", e.getMessage());
+        }
+    }
+
+    private void checkOverdue(Connection connection, Date now) throws SQLException, InterruptedException {
+        Timestamp watermark = overdueWatermark;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select max(occurred_at) from loan_event where type = 'overdue'")) {
+            Timestamp last = resultSet.next() ? resultSet.getTimestamp(1) : null;
+
+            if (last != null && (watermark == null || last.after(watermark))) watermark = last;
+        }
+        // журнал пуст: просрочки, наступившие до его появления, не восстанавливаем
+        if (watermark == null) watermark = new Timestamp(now.getTime());
+
+        List<Pending> overdue = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select id, person_id, due_at from book where due_at > ? and due_at <= ? order by due_at")) {
+            statement.setTimestamp(1, watermark);
+            statement.setTimestamp(2, new Timestamp(now.getTime()));
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    // срок с полной точностью столбца: с ним сравнивается начало следующей проверки
+                    Timestamp dueAt = resultSet.getTimestamp(3);
+                    overdue.add(new Pending(new LoanEvent(LoanEvent.Type.OVERDUE,
+                            resultSet.getInt(1), resultSet.getInt(2), dueAt, dueAt), null));
+                }
+            }
+        }
+
+        // пачки идут по возрастанию срока, поэтому после сбоя проверка продолжится с последней записанной
+        for (int from = 0; from < overdue.size(); from += batchSize)
+            write(overdue.subList(from, Math.min(from + batchSize, overdue.size())));
+        overdueWatermark = new Timestamp(now.getTime());
+
+        try (Connection rollups = dataSource.getConnection()) {
+            rollups.setAutoCommit(false);
+            circulationRollups.countOverdue(rollups, new Timestamp(now.getTime()));
+            rollups.commit();
+        } catch (SQLException e) {
+            log.warn("Журнал выдач: число просроченных книг не пересчитано: {}", e.getMessage());
+        }
+    }
+
+    // сессионная advisory-блокировка проверки просрочек, общая для всех экземпляров приложения
+    private static boolean advisoryLock(Connection connection, String function) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("select " + function + "(?)")) {
+            statement.setLong(1, OVERDUE_LOCK);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    // Timestamp из базы записывается как есть, без потери микросекунд
+    private static Timestamp timestamp(Date date) {
+        return date instanceof Timestamp timestamp ? timestamp : new Timestamp(date.getTime());
+    }
+
+    private static boolean isPostgres(Connection connection) throws SQLException {
+        return "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    // событие и признак его записи (только в режиме SYNC)
+    private static class Pending {
+        private final LoanEvent event;
+        private final CompletableFuture<Void> written;
+
+        private Pending(LoanEvent event, CompletableFuture<Void> written) {
+            this.event = event;
+            this.written = written;
+        }
+    }
+}
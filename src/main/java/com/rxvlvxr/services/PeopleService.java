@@ -1,32 +1,61 @@
 package com.rxvlvxr.services;
 
+import com.rxvlvxr.dto.PersonListItem;
 import com.rxvlvxr.models.Book;
 import com.rxvlvxr.models.Person;
+import com.rxvlvxr.repositories.BooksRepository;
 import com.rxvlvxr.repositories.PeopleRepository;
-import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @Transactional(readOnly = true)
 public class PeopleService {
+    private static final int MAX_DELETE_ATTEMPTS = 3;
+    // сколько людей показывается в списке выбора держателя книги
+    public static final int PICKER_LIMIT = 50;
+
     private final PeopleRepository peopleRepository;
+    private final BooksRepository booksRepository;
+    private final BooksService booksService;
+    private final CatalogVersion catalogVersion;
+    private final PersonNameIndex personNameIndex;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
-    public PeopleService(PeopleRepository peopleRepository) {
+    public PeopleService(PeopleRepository peopleRepository, BooksRepository booksRepository, BooksService booksService,
+                         CatalogVersion catalogVersion, PersonNameIndex personNameIndex,
+                         PlatformTransactionManager transactionManager) {
         this.peopleRepository = peopleRepository;
+        this.booksRepository = booksRepository;
+        this.booksService = booksService;
+        this.catalogVersion = catalogVersion;
+        this.personNameIndex = personNameIndex;
+        // пишущая транзакция, чтобы выданные книги читались из основной базы, а не с отстающей реплики
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // список людей без загрузки сущностей в persistence context
+    public List<PersonListItem> findAll() {
+        return peopleRepository.findAllBy();
     }
 
-    public List<Person> findAll() {
-        return peopleRepository.findAll();
+    // первые PICKER_LIMIT людей по алфавиту, имя которых начинается с prefix; без prefix список пуст,
+    // чтобы страница книги не выводила всех людей
+    public List<PersonListItem> findForPicker(String prefix) {
+        if (prefix == null || prefix.isBlank()) return Collections.emptyList();
+
+        return peopleRepository.findByNameStartingWithOrderByName(prefix.trim(), PageRequest.of(0, PICKER_LIMIT));
     }
 
     public Optional<Person> findById(int id) {
@@ -35,56 +64,54 @@ public class PeopleService {
 
     @Transactional
     public void save(Person person) {
+        personNameIndex.put(person.getName());
         peopleRepository.save(person);
+        catalogVersion.bump();
     }
 
+    // меняются поля управляемого человека, книги не трогаются: они ссылаются на него по id
+    // UPDATE (@DynamicUpdate) содержит только измененные столбцы
     @Transactional
     public void update(int id, Person updatedPerson) {
-        updatedPerson.setId(id);
-
-        Optional<Person> optionalPerson = peopleRepository.findById(id);
-
-        optionalPerson.ifPresent(person -> {
-            List<Book> books = person.getBooks();
-
-            updatedPerson.setBooks(books);
-            person.getBooks().clear();
-
-            books.forEach(book -> book.setPerson(updatedPerson));
+        peopleRepository.findById(id).ifPresent(person -> {
+            person.setName(updatedPerson.getName());
+            person.setBirthYear(updatedPerson.getBirthYear());
+            personNameIndex.put(updatedPerson.getName());
+            catalogVersion.bump();
         });
-
-        peopleRepository.save(updatedPerson);
     }
 
-    @Transactional
+    // книги человека сначала возвращаются обычным путем (событие RETURN в журнале выдач, сброс кэшей каталога),
+    // иначе ON DELETE SET NULL очистил бы только person_id; если между возвратом и удалением человеку выдали
+    // еще книгу, ограничение book_loan_check не даст удалить его, и возврат повторяется
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void delete(int id) {
-        peopleRepository.deleteById(id);
+        for (int attempt = 1; ; attempt++) {
+            transactionTemplate.execute(status -> booksRepository.findIdsByPersonId(id)).forEach(booksService::release);
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> peopleRepository.deleteById(id));
+                catalogVersion.bump();
+                return;
+            } catch (DataIntegrityViolationException e) {
+                if (attempt == MAX_DELETE_ATTEMPTS) throw e;
+            }
+        }
     }
 
+    // человек вместе со списком его книг одним запросом
+    public Optional<Person> findWithBooksById(int id) {
+        return peopleRepository.findWithBooksById(id);
+    }
+
+    // признак просрочки вычисляется из сохраненного срока возврата due_at (см. Book.isExpired)
     public List<Book> findAllBooksByPersonId(int id) {
-        Optional<Person> optionalPerson = peopleRepository.findById(id);
-        AtomicReference<List<Book>> books = new AtomicReference<>(Collections.emptyList());
-
-        optionalPerson.ifPresent(person -> {
-            Hibernate.initialize(person.getBooks());
-            books.set(person.getBooks());
-
-            int daysToExpire = 10;
-            // задаем дату просрочки для держателя книги
-            LocalDateTime expireDate = LocalDateTime.now(ZoneId.systemDefault()).minusDays(daysToExpire);
-
-            // проходимся по всему списку и проверяем просрочил ли дату сдачи держатель или нет
-            books.get().forEach(book -> {
-                LocalDateTime takenAt = LocalDateTime.ofInstant(book.getTakenAt().toInstant(), ZoneId.systemDefault());
-                // если дата когда книга должна была быть возвращена в библиотеку идет после даты когда ее взяли
-                // то параметру expired присвивается значение true
-                if (expireDate.isAfter(takenAt)) {
-                    book.setExpired(true);
-                }
-            });
-        });
+        return peopleRepository.findWithBooksById(id).map(Person::getBooks).orElse(Collections.emptyList());
+    }
 
-        return books.get();
+    // занято ли имя другим человеком; обычно отвечает фильтр в памяти без запроса к базе данных
+    public boolean isNameTaken(String name) {
+        return personNameIndex.isTaken(name);
     }
 
     public Optional<Person> findPersonByName(String name) {
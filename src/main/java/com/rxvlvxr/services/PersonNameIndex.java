@@ -0,0 +1,176 @@
+package com.rxvlvxr.services;
+
+import com.rxvlvxr.repositories.PeopleRepository;
+import com.rxvlvxr.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// проверка занятости имени человека: фильтр Блума в памяти отвечает "точно свободно" без запроса к базе данных,
+// и только при положительном ответе фильтра имя проверяется точно по уникальному индексу person_name_key
+// удаленные и переименованные имена из фильтра не удаляются (дают лишь ложноположительные ответы),
+// поэтому фильтр перестраивается, когда число добавлений превышает расчетное
+// фильтр строится в фоне; пока первый фильтр не готов, каждое имя проверяется по базе данных
+@Component
+public class PersonNameIndex {
+    private static final Logger log = LoggerFactory.getLogger(PersonNameIndex.class);
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final long RETRY_MILLIS = 5000;
+
+    private final PeopleRepository peopleRepository;
+    private final long expectedNames;
+
+    private volatile BloomFilter filter;
+    // расчетный размер текущего фильтра и число добавленных в него имен
+    private long capacity;
+    private long insertions;
+    // имена, добавленные во время построения нового фильтра (null - фильтр не строится)
+    private List<String> pending;
+
+    private final AtomicBoolean building = new AtomicBoolean();
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "person-name-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter definitelyFree;
+    private final Counter checked;
+    private final Counter falsePositives;
+
+    @Autowired
+    public PersonNameIndex(PeopleRepository peopleRepository, MeterRegistry meterRegistry,
+                           @Value("${people.name_filter.expected:100000}") long expectedNames) {
+        this.peopleRepository = peopleRepository;
+        this.expectedNames = expectedNames;
+
+        this.definitelyFree = Counter.builder("people.name_filter.lookups").tag("result", "negative").register(meterRegistry);
+        this.checked = Counter.builder("people.name_filter.lookups").tag("result", "positive").register(meterRegistry);
+        this.falsePositives = Counter.builder("people.name_filter.lookups").tag("result", "false_positive").register(meterRegistry);
+    }
+
+    // строим фильтр при старте приложения, не задерживая старт контекста
+    @PostConstruct
+    public void warmUp() {
+        rebuild();
+    }
+
+    @PreDestroy
+    public void close() {
+        builder.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return filter != null;
+    }
+
+    // перестраиваем фильтр целиком в фоне, например после загрузки людей в обход PeopleService
+    // пока идет построение, проверки используют прежний фильтр
+    public void rebuild() {
+        if (building.compareAndSet(false, true)) builder.execute(this::buildWithRetry);
+    }
+
+    // перестройка с ожиданием результата, например после заполнения базы в обход PeopleService в бенчмарках
+    // выполняется в том же потоке, что и фоновые перестройки, поэтому не пересекается с ними
+    public void rebuildAndWait() throws InterruptedException {
+        try {
+            builder.submit(this::build).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Не удалось построить фильтр имен людей", e.getCause());
+        }
+    }
+
+    // первый фильтр строится до успеха, при неудачной перестройке остается прежний
+    private void buildWithRetry() {
+        try {
+            while (true) {
+                try {
+                    build();
+                    return;
+                } catch (RuntimeException e) {
+                    log.warn("Не удалось построить фильтр имен людей", e);
+                    if (filter != null) return;
+                    Thread.sleep(RETRY_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            building.set(false);
+        }
+    }
+
+    private void build() {
+        synchronized (this) {
+            pending = new ArrayList<>();
+        }
+
+        try {
+            List<String> names = peopleRepository.findAllNames();
+            // запас в два раза, чтобы фильтр не приходилось перестраивать сразу после старта
+            long size = Math.max(expectedNames, 2L * names.size());
+            BloomFilter newFilter = new BloomFilter(size, FALSE_POSITIVE_RATE);
+
+            names.forEach(newFilter::put);
+
+            synchronized (this) {
+                // имена, добавленные после чтения из базы данных, в прочитанном списке могло не оказаться
+                pending.forEach(newFilter::put);
+                filter = newFilter;
+                capacity = size;
+                insertions = names.size() + pending.size();
+            }
+        } finally {
+            synchronized (this) {
+                pending = null;
+            }
+        }
+    }
+
+    // имя добавляется до коммита: если транзакция откатится, останется только лишний положительный ответ
+    public void put(String name) {
+        if (name == null) return;
+
+        boolean full;
+        synchronized (this) {
+            if (pending != null) pending.add(name);
+            if (filter == null) return;
+
+            filter.put(name);
+            full = ++insertions > capacity;
+        }
+
+        if (full) rebuild();
+    }
+
+    public boolean isTaken(String name) {
+        BloomFilter current = filter;
+        // фильтр еще строится: счетчики фильтра не меняются
+        if (current == null) return name != null && peopleRepository.existsByName(name);
+
+        if (name == null || !current.mightContain(name)) {
+            definitelyFree.increment();
+            return false;
+        }
+
+        checked.increment();
+        boolean taken = peopleRepository.existsByName(name);
+
+        if (!taken) falsePositives.increment();
+
+        return taken;
+    }
+}
@@ -0,0 +1,65 @@
+package com.rxvlvxr.services;
+
+import com.rxvlvxr.dto.CirculationStats;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+// чтение показателей выдачи только из сводных таблиц (см. CirculationRollups): строка итогов по ключу,
+// первые topBooks строк индекса loan_stats_book_checkouts_idx и таблица по годам издания (не больше числа лет),
+// поэтому время ответа не зависит от размера book, person и журнала выдач
+// read-only транзакция, при наличии реплик запросы идут на реплику
+@Service
+@Transactional(readOnly = true)
+public class StatsService {
+    private final int topBooks;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public StatsService(@Value("${stats.top_books:10}") int topBooks) {
+        this.topBooks = topBooks;
+    }
+
+    public CirculationStats find() {
+        List<Object[]> totals = rows(entityManager.createNativeQuery("select checkouts, active_loans, " +
+                "active_borrowers, overdue_loans, reconciled_at from loan_stats_total where id = 1", Object[].class));
+        Object[] row = totals.isEmpty() ? new Object[5] : totals.get(0);
+
+        List<CirculationStats.TopBook> books = rows(entityManager.createNativeQuery("select b.id, b.title, " +
+                        "b.author, s.checkouts from loan_stats_book s join book b on b.id = s.book_id " +
+                        "order by s.checkouts desc, s.book_id", Object[].class).setMaxResults(topBooks))
+                .stream()
+                .map(book -> new CirculationStats.TopBook(number(book[0]).intValue(), (String) book[1],
+                        (String) book[2], number(book[3]).longValue()))
+                .toList();
+
+        List<CirculationStats.YearLoans> years = rows(entityManager.createNativeQuery(
+                        "select year, checkouts, active from loan_stats_year order by year", Object[].class))
+                .stream()
+                .map(year -> new CirculationStats.YearLoans(number(year[0]).intValue(),
+                        number(year[1]).longValue(), number(year[2]).longValue()))
+                .toList();
+
+        return new CirculationStats(number(row[0]).longValue(), number(row[1]).longValue(), number(row[2]).longValue(),
+                number(row[3]).longValue(), (Date) row[4], books, years);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object[]> rows(Query query) {
+        return query.getResultList();
+    }
+
+    // драйверы возвращают int, bigint и count(*) разными типами, пустое значение считаем нулем
+    private static Number number(Object value) {
+        return value == null ? 0 : (Number) value;
+    }
+}
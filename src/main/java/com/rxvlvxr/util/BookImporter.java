@@ -0,0 +1,200 @@
+package com.rxvlvxr.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rxvlvxr.dto.ImportReport;
+import com.rxvlvxr.models.Book;
+import org.postgresql.PGConnection;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Validator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// потоковый импорт книг из CSV или NDJSON через PostgreSQL COPY
+// файл читается построчно, в памяти держится только текущая пачка строк, поэтому потребление памяти не зависит от размера файла
+public class BookImporter {
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    // источник соединений: для каждой пачки берется отдельное соединение, COPY пачки выполняется атомарно
+    public interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+    // COPY не возвращает id строк, поэтому пачка копируется во временную таблицу сеанса
+    // и переносится в book одним INSERT ... RETURNING в той же транзакции
+    private static final String STAGING_SQL = "CREATE TEMP TABLE IF NOT EXISTS book_import " +
+            "(title text, author text, year int) ON COMMIT DELETE ROWS";
+    private static final String COPY_SQL = "COPY book_import (title, author, year) FROM STDIN WITH (FORMAT csv)";
+    private static final String INSERT_SQL = "WITH inserted AS (INSERT INTO book (title, author, year) " +
+            "SELECT title, author, year FROM book_import RETURNING id) SELECT count(*), min(id), max(id) FROM inserted";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Validator beanValidator;
+    private final BookValidator bookValidator;
+    private final int chunkSize;
+
+    public BookImporter(Validator beanValidator, BookValidator bookValidator, int chunkSize) {
+        this.beanValidator = beanValidator;
+        this.bookValidator = bookValidator;
+        this.chunkSize = chunkSize;
+    }
+
+    public ImportReport run(Reader input, Format format, ConnectionSource connections) throws IOException {
+        ImportReport report = new ImportReport();
+        BufferedReader reader = new BufferedReader(input);
+        StringBuilder chunk = new StringBuilder();
+        // номера строк файла для текущей пачки, чтобы сообщить об ошибке по каждой строке
+        long[] chunkLines = new long[chunkSize];
+        int chunkRows = 0;
+        long lineNumber = 0;
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+            // заголовок CSV пропускаем
+            if (format == Format.CSV && lineNumber == 1 && line.trim().equalsIgnoreCase("title,author,year")) continue;
+
+            Book book;
+            try {
+                book = format == Format.CSV ? parseCsv(line) : parseJson(line);
+            } catch (IllegalArgumentException | IOException e) {
+                report.reject(lineNumber, "Некорректная строка: " + e.getMessage());
+                continue;
+            }
+
+            // те же правила, что и при добавлении книги через форму: аннотации Book и BookValidator
+            BeanPropertyBindingResult errors = new BeanPropertyBindingResult(book, "book");
+            beanValidator.validate(book, errors);
+            bookValidator.validate(book, errors);
+
+            if (errors.hasErrors()) {
+                report.reject(lineNumber, errors.getFieldErrors().stream()
+                        .map(error -> error.getField() + ": " + error.getDefaultMessage())
+                        .collect(Collectors.joining("; ")));
+                continue;
+            }
+
+            appendCsv(chunk, book);
+            chunkLines[chunkRows++] = lineNumber;
+
+            if (chunkRows >= chunkSize) {
+                copy(chunk, chunkLines, chunkRows, connections, report);
+                chunk.setLength(0);
+                chunkRows = 0;
+            }
+        }
+
+        if (chunkRows > 0) copy(chunk, chunkLines, chunkRows, connections, report);
+
+        return report;
+    }
+
+    private void copy(StringBuilder chunk, long[] lines, int rows, ConnectionSource connections, ImportReport report) {
+        try (Connection connection = connections.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            // пачка загружается целиком или не загружается вовсе
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(STAGING_SQL);
+                connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL, new StringReader(chunk.toString()));
+
+                try (ResultSet inserted = statement.executeQuery(INSERT_SQL)) {
+                    inserted.next();
+                    long count = inserted.getLong(1);
+                    int firstId = inserted.getInt(2), lastId = inserted.getInt(3);
+
+                    connection.commit();
+                    if (count > 0) report.addImported(count, firstId, lastId);
+                }
+            } catch (SQLException | IOException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException | IOException e) {
+            for (int i = 0; i < rows; i++) report.reject(lines[i], "Пачка не загружена: " + e.getMessage());
+        }
+    }
+
+    private static Book parseJson(String line) throws IOException {
+        JsonNode node = MAPPER.readTree(line);
+        if (node == null || !node.isObject()) throw new IllegalArgumentException("ожидается JSON объект");
+
+        return book(node.path("title").asText(null), node.path("author").asText(null), node.path("year").asText(null));
+    }
+
+    private static Book parseCsv(String line) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() != 3) throw new IllegalArgumentException("ожидается 3 поля: title,author,year");
+
+        return book(fields.get(0), fields.get(1), fields.get(2));
+    }
+
+    private static Book book(String title, String author, String year) {
+        Book book = new Book();
+
+        book.setTitle(title);
+        book.setAuthor(author);
+        try {
+            book.setYear(Integer.parseInt(year == null ? "" : year.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("год должен быть числом");
+        }
+
+        return book;
+    }
+
+    // разбор строки CSV с поддержкой полей в кавычках и экранированных кавычек ("")
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') quoted = false;
+                else field.append(c);
+            } else if (c == '"') quoted = true;
+            else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else field.append(c);
+        }
+
+        if (quoted) throw new IllegalArgumentException("незакрытая кавычка");
+        fields.add(field.toString());
+
+        return fields;
+    }
+
+    private static void appendCsv(StringBuilder chunk, Book book) {
+        chunk.append(quote(book.getTitle())).append(',')
+                .append(quote(book.getAuthor())).append(',')
+                .append(book.getYear()).append('\n');
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.validation.Validator;
 // валидация на уникальность по имени человека
 @Component
 public class PersonNameValidator implements Validator {
+    public static final String NAME_TAKEN = "Такой человек уже существует";
 
     private final PeopleService peopleService;
 
@@ -28,12 +29,12 @@ public class PersonNameValidator implements Validator {
     public void validate(Object target, Errors errors) {
         Person person = (Person) target;
 
-        peopleService.findPersonByName(person.getName()).ifPresent((value) -> errors.rejectValue
+        // база данных запрашивается, только если имя есть в фильтре занятых имен
+        if (peopleService.isNameTaken(person.getName())) errors.rejectValue
                 (
                         "name",
                         "",
-                        "Такой человек уже существует"
-                )
-        );
+                        NAME_TAKEN
+                );
     }
 }
@@ -0,0 +1,93 @@
+package com.rxvlvxr.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// построчная запись выгрузки в CSV или NDJSON прямо в поток ответа, без накопления строк в памяти
+public abstract class RowWriter implements AutoCloseable {
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    protected final Writer writer;
+    protected final String[] columns;
+
+    protected RowWriter(Writer writer, String[] columns) {
+        this.writer = writer;
+        this.columns = columns;
+    }
+
+    public static RowWriter of(Format format, Writer writer, String... columns) throws IOException {
+        return format == Format.CSV ? new Csv(writer, columns) : new NdJson(writer, columns);
+    }
+
+    // значения передаются в порядке columns, null записывается как пустое поле (CSV) или null (NDJSON)
+    public abstract void row(Object... values) throws IOException;
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.flush();
+    }
+
+    private static class Csv extends RowWriter {
+        private Csv(Writer writer, String[] columns) throws IOException {
+            super(writer, columns);
+            writer.write(String.join(",", columns));
+            writer.write('\n');
+        }
+
+        @Override
+        public void row(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) writer.write(',');
+                if (values[i] == null) continue;
+
+                String value = values[i].toString();
+                if (values[i] instanceof Number || values[i] instanceof Boolean) writer.write(value);
+                else writer.write('"' + value.replace("\"", "\"\"") + '"');
+            }
+            writer.write('\n');
+        }
+    }
+
+    private static class NdJson extends RowWriter {
+        private final JsonGenerator generator;
+
+        private NdJson(Writer writer, String[] columns) throws IOException {
+            super(writer, columns);
+            generator = new JsonFactory().createGenerator(writer);
+            generator.setRootValueSeparator(null);
+            // поток ответа закрывает контейнер сервлетов
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        public void row(Object... values) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < values.length; i++) {
+                generator.writeFieldName(columns[i]);
+                if (values[i] == null) generator.writeNull();
+                else if (values[i] instanceof Integer) generator.writeNumber((Integer) values[i]);
+                else if (values[i] instanceof Boolean) generator.writeBoolean((Boolean) values[i]);
+                else generator.writeString(values[i].toString());
+            }
+            generator.writeEndObject();
+            generator.flush();
+            writer.write('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+-- люди и книги
+-- база могла быть создана раньше скриптом из README (история миграций для нее начинается с версии 0),
+-- поэтому существующие таблицы, столбцы и ограничения пропускаются
+CREATE TABLE IF NOT EXISTS person (
+    id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(100) NOT NULL,
+    birth_year INT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS book (
+    id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    title VARCHAR(255) NOT NULL,
+    author VARCHAR(100) NOT NULL,
+    year INT NOT NULL,
+    -- при удалении человека его книги становятся свободными
+    person_id INT REFERENCES person (id) ON DELETE SET NULL,
+    taken_at TIMESTAMP
+);
+
+-- срок возврата (books.loan_period_days) и версия для оптимистической блокировки выдачи и возврата
+ALTER TABLE book ADD COLUMN IF NOT EXISTS due_at TIMESTAMP;
+ALTER TABLE book ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0;
+UPDATE book SET due_at = taken_at + INTERVAL '10 days' WHERE taken_at IS NOT NULL AND due_at IS NULL;
+
+-- отчет о просрочке и поиск наступивших просрочек
+CREATE INDEX IF NOT EXISTS book_due_at_idx ON book (due_at);
+
+-- имя человека уникально (повторяющиеся имена нужно убрать до миграции); индекс ограничения используется
+-- и для поиска человека по имени (findPersonByName, existsByName)
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'person_name_key') THEN
+        ALTER TABLE person ADD CONSTRAINT person_name_key UNIQUE (name);
+    END IF;
+END $$;
@@ -0,0 +1,13 @@
+-- журнал выдач, возвратов и просрочек (docs/loan-events.md), секции по месяцам создает приложение
+CREATE TABLE IF NOT EXISTS loan_event (
+    type VARCHAR(8) NOT NULL,
+    book_id INT NOT NULL,
+    person_id INT NOT NULL,
+    occurred_at TIMESTAMP NOT NULL,
+    due_at TIMESTAMP
+) PARTITION BY RANGE (occurred_at);
+
+CREATE INDEX IF NOT EXISTS loan_event_book_idx ON loan_event (book_id, occurred_at);
+CREATE INDEX IF NOT EXISTS loan_event_person_idx ON loan_event (person_id, occurred_at);
+-- последнее событие просрочки (с него продолжается проверка просрочек после перезапуска)
+CREATE INDEX IF NOT EXISTS loan_event_overdue_idx ON loan_event (occurred_at) WHERE type = 'overdue';
@@ -0,0 +1,28 @@
+-- сводные таблицы страницы /stats (docs/stats.md)
+CREATE TABLE IF NOT EXISTS loan_stats_book (
+    book_id INT PRIMARY KEY,
+    checkouts BIGINT NOT NULL
+);
+-- самые популярные книги
+CREATE INDEX IF NOT EXISTS loan_stats_book_checkouts_idx ON loan_stats_book (checkouts DESC, book_id);
+
+CREATE TABLE IF NOT EXISTS loan_stats_year (
+    year INT PRIMARY KEY,
+    checkouts BIGINT NOT NULL,
+    active INT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS loan_stats_person (
+    person_id INT PRIMARY KEY,
+    active INT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS loan_stats_total (
+    id INT PRIMARY KEY,
+    checkouts BIGINT NOT NULL,
+    active_loans INT NOT NULL,
+    active_borrowers INT NOT NULL,
+    overdue_loans INT NOT NULL,
+    reconciled_at TIMESTAMP
+);
+INSERT INTO loan_stats_total VALUES (1, 0, 0, 0, 0, NULL) ON CONFLICT (id) DO NOTHING;
@@ -0,0 +1,13 @@
+-- индексы для запросов репозиториев (проверяются при старте с schema.plan_check=true, см. QueryPlanCheck)
+-- на большой работающей базе их лучше заранее создать вручную через CREATE INDEX CONCURRENTLY с теми же именами,
+-- тогда миграция их пропустит и не будет блокировать запись в book на время построения
+
+-- книги человека (Person.books, findWithBooksById) и сверка сводок; в индексе только выданные книги
+CREATE INDEX IF NOT EXISTS book_person_id_idx ON book (person_id) WHERE person_id IS NOT NULL;
+
+-- поиск по началу названия (title LIKE 'префикс%'): text_pattern_ops сравнивает строки посимвольно,
+-- поэтому индекс подходит для LIKE при любой сортировке (collation) базы данных
+CREATE INDEX IF NOT EXISTS book_title_pattern_idx ON book (title text_pattern_ops);
+
+-- сортировка по году (findAll с Sort.by("year")) и keyset-пагинация по (year, id)
+CREATE INDEX IF NOT EXISTS book_year_id_idx ON book (year, id);
@@ -0,0 +1,10 @@
+-- выданная книга всегда с держателем и сроком возврата, свободная - без них
+-- раньше при удалении человека ON DELETE SET NULL очищал только person_id, и у свободных книг оставались
+-- taken_at и due_at: они попадали в отчет о просрочке и в сводки /stats
+UPDATE book SET taken_at = NULL, due_at = NULL WHERE person_id IS NULL AND (taken_at IS NOT NULL OR due_at IS NOT NULL);
+UPDATE book SET taken_at = coalesce(taken_at, now()), due_at = coalesce(taken_at, now()) + INTERVAL '10 days'
+WHERE person_id IS NOT NULL AND due_at IS NULL;
+
+-- ON DELETE SET NULL теперь не сработает для человека с выданными книгами: PeopleService.delete
+-- сначала возвращает их обычным путем
+ALTER TABLE book ADD CONSTRAINT book_loan_check CHECK ((person_id IS NULL) = (due_at IS NULL));
@@ -0,0 +1,3 @@
+-- выбор держателя на странице свободной книги по началу имени (name LIKE 'префикс%'),
+-- text_pattern_ops - как у book_title_pattern_idx, чтобы индекс подходил для LIKE при любой сортировке базы
+CREATE INDEX IF NOT EXISTS person_name_pattern_idx ON person (name text_pattern_ops);